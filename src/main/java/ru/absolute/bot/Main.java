@@ -12,15 +12,18 @@ import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
-import ru.absolute.bot.clients.GoogleSheetsClient;
+import ru.absolute.bot.clients.SheetsBackend;
 import ru.absolute.bot.commands.*;
 import ru.absolute.bot.dao.BossDao;
 import ru.absolute.bot.dao.EventDao;
 import ru.absolute.bot.dao.ItemsDao;
+import ru.absolute.bot.dao.SheetsBulkLoader;
 import ru.absolute.bot.handlers.ButtonHandler;
 import ru.absolute.bot.handlers.CommandHandler;
+import ru.absolute.bot.handlers.ScheduleMessageHandler;
 import ru.absolute.bot.services.BossService;
 import ru.absolute.bot.services.EventService;
+import ru.absolute.bot.services.OperationJournal;
 import ru.absolute.bot.utils.ConfigLoader;
 
 @Slf4j
@@ -34,17 +37,21 @@ public class Main {
         }
 
         try {
-            // Инициализация GoogleSheetsClient
-            GoogleSheetsClient googleSheetsClient = new GoogleSheetsClient();
+            // Инициализация хранилища листов: Google Sheets или локальное (SHEETS_BACKEND)
+            SheetsBackend sheetsBackend = SheetsBackend.fromConfig();
 
             // Инициализация DAO
-            BossDao bossDao = new BossDao(googleSheetsClient, ConfigLoader.getProperty("GOOGLE_BOSSES_SHEET"));
-            ItemsDao itemsDao = new ItemsDao(googleSheetsClient, ConfigLoader.getProperty("GOOGLE_ITEMS_SHEET"));
-            EventDao eventDao = new EventDao(googleSheetsClient, ConfigLoader.getProperty("GOOGLE_EVENTS_SHEET"));
-
-            // Инициализация сервисов
-            BossService bossService = new BossService(bossDao, itemsDao);
-            EventService eventService = new EventService(eventDao);
+            BossDao bossDao = new BossDao(sheetsBackend, ConfigLoader.getProperty("GOOGLE_BOSSES_SHEET"));
+            ItemsDao itemsDao = new ItemsDao(sheetsBackend, ConfigLoader.getProperty("GOOGLE_ITEMS_SHEET"));
+            EventDao eventDao = new EventDao(sheetsBackend, ConfigLoader.getProperty("GOOGLE_EVENTS_SHEET"));
+            SheetsBulkLoader bulkLoader = new SheetsBulkLoader(sheetsBackend, bossDao, itemsDao, eventDao);
+
+            // Инициализация сервисов. Журнал операций повторяет то, что не дошло до хранилища до перезапуска;
+            // если хранилище само ведет надежный журнал (SHEETS_BACKEND=MIRROR), второй журнал не пишется
+            OperationJournal journal = OperationJournal.fromConfig(sheetsBackend.isDurable());
+            BossService bossService = new BossService(bossDao, itemsDao, bulkLoader, journal);
+            EventService eventService = new EventService(eventDao, journal);
+            journal.replay();
 
             // Создаем и настраиваем JDA
             JDA jda = JDABuilder.createDefault(discordToken)
@@ -78,9 +85,10 @@ public class Main {
                     showEventsCommand
             );
             ButtonHandler buttonHandler = new ButtonHandler(createEventCommand, editEventCommand);
+            ScheduleMessageHandler scheduleMessageHandler = new ScheduleMessageHandler(showCommand);
 
             // Добавляем обработчики после инициализации всех команд
-            jda.addEventListener(commandHandler, buttonHandler);
+            jda.addEventListener(commandHandler, buttonHandler, scheduleMessageHandler);
 
             // Регистрируем команды
             jda.updateCommands().addCommands(
@@ -109,6 +117,10 @@ public class Main {
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 showCommand.shutdown();
+                bossService.shutdown();
+                eventService.shutdown();
+                journal.shutdown();
+                sheetsBackend.shutdown();
                 log.info("Бот завершает работу...");
             }));
 
@@ -0,0 +1,72 @@
+package ru.absolute.bot.clients;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Диапазон в нотации A1 ("Лист", "Лист!A2:C", "Лист!A5", "Лист!A:A").
+ * Строки и столбцы считаются с нуля, границы включительные; открытая граница - Integer.MAX_VALUE.
+ */
+record A1Range(String sheet, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+    private static final Pattern CELL = Pattern.compile("([A-Za-z]*)(\\d*)");
+
+    static A1Range parse(String range) {
+        int separator = range.lastIndexOf('!');
+        String sheet = separator < 0 ? range : range.substring(0, separator);
+        if (sheet.length() > 1 && sheet.startsWith("'") && sheet.endsWith("'")) {
+            sheet = sheet.substring(1, sheet.length() - 1).replace("''", "'");
+        }
+        if (separator < 0) {
+            return new A1Range(sheet, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+
+        String cells = range.substring(separator + 1);
+        int colon = cells.indexOf(':');
+        Matcher start = matchCell(colon < 0 ? cells : cells.substring(0, colon), range);
+        int firstColumn = start.group(1).isEmpty() ? 0 : columnIndex(start.group(1));
+        int firstRow = start.group(2).isEmpty() ? 0 : Integer.parseInt(start.group(2)) - 1;
+        if (colon < 0) {
+            // Одна ячейка, либо целый столбец/строка, если часть адреса опущена
+            return new A1Range(sheet, firstRow, firstColumn,
+                    start.group(2).isEmpty() ? Integer.MAX_VALUE : firstRow,
+                    start.group(1).isEmpty() ? Integer.MAX_VALUE : firstColumn);
+        }
+
+        Matcher end = matchCell(cells.substring(colon + 1), range);
+        int lastColumn = end.group(1).isEmpty() ? Integer.MAX_VALUE : columnIndex(end.group(1));
+        int lastRow = end.group(2).isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(end.group(2)) - 1;
+        return new A1Range(sheet, firstRow, firstColumn, lastRow, lastColumn);
+    }
+
+    private static Matcher matchCell(String cell, String range) {
+        Matcher matcher = CELL.matcher(cell);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Некорректный диапазон: " + range);
+        }
+        return matcher;
+    }
+
+    private static int columnIndex(String letters) {
+        int index = 0;
+        for (char c : letters.toUpperCase().toCharArray()) {
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    static String columnName(int index) {
+        StringBuilder name = new StringBuilder();
+        for (int i = index + 1; i > 0; i = (i - 1) / 26) {
+            name.insert(0, (char) ('A' + (i - 1) % 26));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Записывает диапазон обратно в нотации A1, как его возвращает Google Sheets.
+     */
+    static String format(String sheet, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        String quoted = sheet.matches("[A-Za-z0-9_]+") ? sheet : "'" + sheet.replace("'", "''") + "'";
+        return quoted + "!" + columnName(firstColumn) + (firstRow + 1) + ":" + columnName(lastColumn) + (lastRow + 1);
+    }
+}
@@ -1,25 +1,43 @@
 package ru.absolute.bot.clients;
 
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.BatchGetValuesResponse;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
 import com.google.api.services.sheets.v4.model.ValueRange;
 import com.google.auth.http.HttpCredentialsAdapter;
 import com.google.auth.oauth2.GoogleCredentials;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Kind;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
 import ru.absolute.bot.utils.ConfigLoader;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class GoogleSheetsClient {
+/**
+ * Хранилище листов в Google Sheets.
+ */
+public class GoogleSheetsClient implements SheetsBackend {
     private static final Logger logger = LoggerFactory.getLogger(GoogleSheetsClient.class);
     private final Sheets sheetsService;
     private final String spreadsheetId;
+    private final SheetsWriteBatcher writeBatcher;
+    private final SheetsHttpTransport httpTransport;
+    private final SheetsQuotaGovernor quotaGovernor = SheetsQuotaGovernor.fromConfig();
+    private final SheetsChangeDetector changeDetector = new SheetsChangeDetector();
+    // Асинхронные вызовы выполняются на виртуальных потоках, чтобы не блокировать потоки JDA
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     @SneakyThrows
     public GoogleSheetsClient() {
@@ -33,32 +51,127 @@ public class GoogleSheetsClient {
         GoogleCredentials credentials = GoogleCredentials.fromStream(new java.io.ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)))
                 .createScoped(List.of("https://www.googleapis.com/auth/spreadsheets"));
 
+        this.httpTransport = SheetsHttpTransport.fromConfig();
         this.sheetsService = new Sheets.Builder(
-                new NetHttpTransport(),
+                httpTransport.getTransport(),
                 new GsonFactory(),
-                new HttpCredentialsAdapter(credentials))
+                httpTransport.initializer(new HttpCredentialsAdapter(credentials)))
                 .setApplicationName("Google Sheets API Java")
                 .build();
         logger.info("Успешно подключено к Google Sheets.");
+
+        // Объединение записей в batchUpdate
+        long batchWindowMillis = ConfigLoader.getLongProperty("SHEETS_WRITE_BATCH_WINDOW_MS", 200);
+        int batchMaxOps = (int) ConfigLoader.getLongProperty("SHEETS_WRITE_BATCH_MAX_OPS", 20);
+        this.writeBatcher = new SheetsWriteBatcher(this::batchUpdateValues, batchWindowMillis, batchMaxOps);
     }
 
-    public ValueRange getValues(String range) throws IOException {
-        return sheetsService.spreadsheets().values()
+    @Override
+    public ValueRange getValues(String range, Priority priority) throws IOException {
+        return quotaGovernor.execute(Kind.READ, priority, () -> sheetsService.spreadsheets().values()
                 .get(spreadsheetId, range)
-                .execute();
+                .execute());
+    }
+
+    /**
+     * Получает несколько диапазонов одним запросом spreadsheets.values.batchGet.
+     */
+    @Override
+    public List<ValueRange> batchGetValues(List<String> ranges) throws IOException {
+        BatchGetValuesResponse response = quotaGovernor.execute(Kind.READ, Priority.NORMAL, () -> sheetsService.spreadsheets().values()
+                .batchGet(spreadsheetId)
+                .setRanges(ranges)
+                .execute());
+        List<ValueRange> valueRanges = response.getValueRanges();
+        if (valueRanges == null || valueRanges.size() != ranges.size()) {
+            throw new IOException("batchGet вернул " + (valueRanges == null ? 0 : valueRanges.size())
+                    + " диапазонов вместо " + ranges.size());
+        }
+        return valueRanges;
+    }
+
+    @Override
+    public List<ValueRange> batchGetIfChanged(List<List<String>> probeRanges, List<String> fullRanges) throws IOException {
+        return changeDetector.batchGetIfChanged(this, probeRanges, fullRanges);
     }
 
+    @Override
+    public void rememberFingerprint(List<String> probeRanges, List<ValueRange> probes) {
+        changeDetector.remember(probeRanges, probes);
+    }
+
+    /**
+     * Обновляет диапазон и ждет, пока пачка с этим обновлением будет записана.
+     */
+    @Override
     public void updateValues(String range, ValueRange body) throws IOException {
-        sheetsService.spreadsheets().values()
-                .update(spreadsheetId, range, body)
+        try {
+            updateValuesBatched(range, body).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прерывание при ожидании записи диапазона " + range, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Ошибка при записи диапазона " + range, e.getCause());
+        }
+    }
+
+    /**
+     * Ставит обновление в очередь записи. Обновления, пришедшие в течение окна,
+     * отправляются одним запросом batchUpdate.
+     */
+    @Override
+    public CompletableFuture<Void> updateValuesBatched(String range, ValueRange body) {
+        return writeBatcher.submit(range, body);
+    }
+
+    // Записи инициированы пользователями (убийства, события), поэтому идут с высоким приоритетом
+    private void batchUpdateValues(List<ValueRange> data) throws IOException {
+        BatchUpdateValuesRequest request = new BatchUpdateValuesRequest()
                 .setValueInputOption("RAW")
-                .execute();
+                .setData(data);
+        quotaGovernor.execute(Kind.WRITE, Priority.HIGH, () -> sheetsService.spreadsheets().values()
+                .batchUpdate(spreadsheetId, request)
+                .execute());
     }
 
-    public void appendValues(String range, ValueRange body) throws IOException {
-        sheetsService.spreadsheets().values()
+    @Override
+    public AppendValuesResponse appendValues(String range, ValueRange body) throws IOException {
+        return quotaGovernor.execute(Kind.APPEND, Priority.HIGH, () -> sheetsService.spreadsheets().values()
                 .append(spreadsheetId, range, body)
                 .setValueInputOption("RAW")
-                .execute();
+                .execute());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(SheetsCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Отправляет накопленные записи перед завершением работы.
+     */
+    @Override
+    public void shutdown() {
+        writeBatcher.shutdown();
+        logger.info("Квота Google Sheets: {}", quotaGovernor.describe());
+        asyncExecutor.shutdown();
+        httpTransport.shutdown();
+    }
+
+    public SheetsHttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    public SheetsQuotaGovernor getQuotaGovernor() {
+        return quotaGovernor;
     }
 }
\ No newline at end of file
@@ -0,0 +1,447 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Kind;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Хранилище листов в памяти для замеров и нагрузочных тестов без сети и учетных данных Google.
+ * Понимает те же диапазоны A1, что и Google Sheets, и может имитировать задержку сети,
+ * ответы 429 (квота исчерпана) и листы заданного размера.
+ */
+public class InMemorySheetsBackend implements SheetsBackend {
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySheetsBackend.class);
+
+    private final Map<String, List<List<Object>>> sheets = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SheetsQuotaGovernor quotaGovernor;
+    private final SheetsChangeDetector changeDetector = new SheetsChangeDetector();
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long latencyMillis;
+    private final double errorRate;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    /**
+     * @param latencyMillis задержка каждого запроса, имитирующая сеть
+     * @param errorRate     доля запросов (0..1), на которые отвечаем 429
+     */
+    public InMemorySheetsBackend(SheetsQuotaGovernor quotaGovernor, long latencyMillis, double errorRate) {
+        this.quotaGovernor = quotaGovernor;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Пустое хранилище без задержек и ограничений квоты - основа локальной базы {@link MirroredSheetsBackend}.
+     */
+    static InMemorySheetsBackend unthrottled() {
+        return new InMemorySheetsBackend(
+                new SheetsQuotaGovernor(Integer.MAX_VALUE, Integer.MAX_VALUE, 1, 0, 0), 0, 0);
+    }
+
+    /**
+     * Создает хранилище по параметрам SHEETS_LOCAL_* и заполняет листы из GOOGLE_*_SHEET
+     * сгенерированными данными заданного размера.
+     */
+    public static InMemorySheetsBackend fromConfig() {
+        double errorRate;
+        try {
+            errorRate = Double.parseDouble(ConfigLoader.getProperty("SHEETS_LOCAL_ERROR_RATE", "0").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Некорректное значение SHEETS_LOCAL_ERROR_RATE", e);
+        }
+        InMemorySheetsBackend backend = new InMemorySheetsBackend(
+                SheetsQuotaGovernor.fromConfig(),
+                ConfigLoader.getLongProperty("SHEETS_LOCAL_LATENCY_MS", 0),
+                errorRate);
+
+        backend.generateBosses(ConfigLoader.getProperty("GOOGLE_BOSSES_SHEET"),
+                (int) ConfigLoader.getLongProperty("SHEETS_LOCAL_BOSSES", 100));
+        backend.generateItems(ConfigLoader.getProperty("GOOGLE_ITEMS_SHEET"),
+                (int) ConfigLoader.getLongProperty("SHEETS_LOCAL_ITEMS", 500));
+        backend.generateCheckers(CHECKERS_SHEET, (int) ConfigLoader.getLongProperty("SHEETS_LOCAL_CHECKERS", 50));
+        backend.generateEvents(ConfigLoader.getProperty("GOOGLE_EVENTS_SHEET"),
+                (int) ConfigLoader.getLongProperty("SHEETS_LOCAL_EVENTS", 10_000));
+        logger.info("Локальное хранилище листов: задержка {} мс, доля ошибок 429 {}", backend.latencyMillis, errorRate);
+        return backend;
+    }
+
+    /**
+     * Заменяет содержимое листа. Первая строка - заголовок, как в таблице.
+     */
+    public void putSheet(String sheetName, List<List<Object>> rows) {
+        List<List<Object>> copy = new ArrayList<>(rows.size());
+        for (List<Object> row : rows) {
+            copy.add(toCells(row));
+        }
+        lock.writeLock().lock();
+        try {
+            sheets.put(sheetName, copy);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void generateBosses(String sheetName, int count) {
+        List<List<Object>> rows = new ArrayList<>(count + 1);
+        rows.add(List.of("ID", "Имя", "Уровень", "Время убийства", "Дроп", "Локация", "Палилки"));
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 1; id <= count; id++) {
+            String killTime = id % 5 == 0 ? "" : now.minusMinutes(random.nextInt(24 * 60))
+                    .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            rows.add(List.of(id, "Босс " + id, 40 + id % 50, killTime,
+                    "[" + (id % 500 + 1) + "," + ((id * 7) % 500 + 1) + "]", "Локация " + id % 20,
+                    "{" + (id % 50 + 1) + "," + ((id * 3) % 50 + 1) + "}"));
+        }
+        putSheet(sheetName, rows);
+    }
+
+    public void generateItems(String sheetName, int count) {
+        List<List<Object>> rows = new ArrayList<>(count + 1);
+        rows.add(List.of("ID", "Название"));
+        for (int id = 1; id <= count; id++) {
+            rows.add(List.of(id, "Предмет " + id));
+        }
+        putSheet(sheetName, rows);
+    }
+
+    public void generateCheckers(String sheetName, int count) {
+        List<List<Object>> rows = new ArrayList<>(count + 1);
+        rows.add(List.of("ID", "Логин"));
+        for (int id = 1; id <= count; id++) {
+            rows.add(List.of(id, "checker" + id));
+        }
+        putSheet(sheetName, rows);
+    }
+
+    public void generateEvents(String sheetName, int count) {
+        List<List<Object>> rows = new ArrayList<>(count + 1);
+        rows.add(List.of("ID", "Дата", "Босс", "Дроп", "Участники", "Количество", "Статус"));
+        LocalDate today = LocalDate.now();
+        for (int i = 1; i <= count; i++) {
+            rows.add(List.of(String.valueOf(i), today.minusDays(i % 365).toString(), "Босс " + (i % 100 + 1),
+                    "Предмет " + (i % 500 + 1), "player" + i % 30 + ",player" + (i + 1) % 30, 2,
+                    i > count - 50 ? "IN_PROGRESS" : "DONE"));
+        }
+        putSheet(sheetName, rows);
+    }
+
+    @Override
+    public ValueRange getValues(String range, Priority priority) throws IOException {
+        return quotaGovernor.execute(Kind.READ, priority, () -> {
+            simulateNetwork();
+            return read(range);
+        });
+    }
+
+    @Override
+    public List<ValueRange> batchGetValues(List<String> ranges) throws IOException {
+        return quotaGovernor.execute(Kind.READ, Priority.NORMAL, () -> {
+            simulateNetwork();
+            List<ValueRange> result = new ArrayList<>(ranges.size());
+            for (String range : ranges) {
+                result.add(read(range));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<ValueRange> batchGetIfChanged(List<List<String>> probeRanges, List<String> fullRanges) throws IOException {
+        return changeDetector.batchGetIfChanged(this, probeRanges, fullRanges);
+    }
+
+    @Override
+    public void rememberFingerprint(List<String> probeRanges, List<ValueRange> probes) {
+        changeDetector.remember(probeRanges, probes);
+    }
+
+    @Override
+    public void updateValues(String range, ValueRange body) throws IOException {
+        quotaGovernor.execute(Kind.WRITE, Priority.HIGH, () -> {
+            simulateNetwork();
+            applyUpdate(range, body.getValues());
+            return null;
+        });
+    }
+
+    /**
+     * Записывает значения в диапазон без имитации сети и квоты.
+     */
+    void applyUpdate(String range, List<List<Object>> values) throws IOException {
+        A1Range target = parseRange(range);
+        lock.writeLock().lock();
+        try {
+            write(sheet(target.sheet()), target.firstRow(), target.firstColumn(), values);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Проверяет, что диапазон корректен и лист существует, ничего не записывая.
+     */
+    void validate(String range) throws IOException {
+        A1Range target = parseRange(range);
+        lock.readLock().lock();
+        try {
+            sheet(target.sheet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Точный диапазон, который заняли бы строки values при добавлении в конец листа range.
+     */
+    String resolveAppend(String range, List<List<Object>> values) throws IOException {
+        A1Range target = parseRange(range);
+        lock.readLock().lock();
+        try {
+            int firstRow = lastNonEmptyRow(sheet(target.sheet())) + 1; // Дописываем после последней заполненной строки
+            int width = values.stream().mapToInt(List::size).max().orElse(1);
+            return A1Range.format(target.sheet(), firstRow, target.firstColumn(),
+                    firstRow + Math.max(values.size(), 1) - 1, target.firstColumn() + width - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Переносит строки from целиком на место строк to (той же высоты), освобождая исходные строки.
+     */
+    void moveRows(String from, String to) throws IOException {
+        A1Range source = parseRange(from);
+        A1Range target = parseRange(to);
+        lock.writeLock().lock();
+        try {
+            List<List<Object>> rows = sheet(source.sheet());
+            List<List<Object>> moved = new ArrayList<>();
+            for (int r = source.firstRow(); r <= source.lastRow() && r < rows.size(); r++) {
+                moved.add(rows.get(r));
+                rows.set(r, new ArrayList<>());
+            }
+            write(sheet(target.sheet()), target.firstRow(), 0, moved);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Копия содержимого всех листов.
+     */
+    Map<String, List<List<Object>>> exportSheets() {
+        lock.readLock().lock();
+        try {
+            Map<String, List<List<Object>>> copy = new HashMap<>();
+            sheets.forEach((name, rows) -> {
+                List<List<Object>> rowsCopy = new ArrayList<>(rows.size());
+                for (List<Object> row : rows) {
+                    rowsCopy.add(new ArrayList<>(row));
+                }
+                copy.put(name, rowsCopy);
+            });
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> updateValuesBatched(String range, ValueRange body) {
+        return supplyAsync(() -> {
+            updateValues(range, body);
+            return null;
+        });
+    }
+
+    @Override
+    public AppendValuesResponse appendValues(String range, ValueRange body) throws IOException {
+        return quotaGovernor.execute(Kind.APPEND, Priority.HIGH, () -> {
+            simulateNetwork();
+            List<List<Object>> values = body.getValues() != null ? body.getValues() : List.of();
+            lock.writeLock().lock();
+            try {
+                String updatedRange = resolveAppend(range, values);
+                applyUpdate(updatedRange, values);
+                return appendResponse(updatedRange, values.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(SheetsCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    @Override
+    public void shutdown() {
+        logger.info("Локальное хранилище листов: запросов {}, имитировано ошибок 429 {}. Квота: {}",
+                requests.sum(), injectedErrors.sum(), quotaGovernor.describe());
+        asyncExecutor.shutdown();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    public SheetsQuotaGovernor getQuotaGovernor() {
+        return quotaGovernor;
+    }
+
+    private void simulateNetwork() throws IOException {
+        requests.increment();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Прерывание при имитации задержки", e);
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.increment();
+            throw new GoogleJsonResponseException(
+                    new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders()), null);
+        }
+    }
+
+    /**
+     * Возвращает значения диапазона так же, как Google Sheets: значения ячеек строками,
+     * пустые ячейки в конце строк и пустые строки в конце диапазона отбрасываются.
+     */
+    private ValueRange read(String range) throws IOException {
+        A1Range source = A1Range.parse(range);
+        List<List<Object>> values = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            List<List<Object>> rows = sheet(source.sheet());
+            int lastRow = Math.min(source.lastRow(), rows.size() - 1);
+            for (int r = source.firstRow(); r <= lastRow; r++) {
+                List<Object> row = rows.get(r);
+                int lastColumn = Math.min(source.lastColumn(), row.size() - 1);
+                while (lastColumn >= source.firstColumn() && "".equals(row.get(lastColumn))) {
+                    lastColumn--;
+                }
+                List<Object> cells = new ArrayList<>(Math.max(0, lastColumn - source.firstColumn() + 1));
+                for (int c = source.firstColumn(); c <= lastColumn; c++) {
+                    cells.add(String.valueOf(row.get(c)));
+                }
+                values.add(cells);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        while (!values.isEmpty() && values.get(values.size() - 1).isEmpty()) {
+            values.remove(values.size() - 1);
+        }
+        return new ValueRange()
+                .setRange(range)
+                .setMajorDimension("ROWS")
+                .setValues(values.isEmpty() ? null : values);
+    }
+
+    static AppendValuesResponse appendResponse(String updatedRange, int rows) {
+        return new AppendValuesResponse()
+                .setTableRange(A1Range.parse(updatedRange).sheet())
+                .setUpdates(new UpdateValuesResponse()
+                        .setUpdatedRange(updatedRange)
+                        .setUpdatedRows(rows));
+    }
+
+    private static A1Range parseRange(String range) throws IOException {
+        try {
+            return A1Range.parse(range);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private List<List<Object>> sheet(String sheetName) throws IOException {
+        List<List<Object>> rows = sheets.get(sheetName);
+        if (rows == null) {
+            throw new IOException("Лист не найден: " + sheetName);
+        }
+        return rows;
+    }
+
+    private static void write(List<List<Object>> rows, int firstRow, int firstColumn, List<List<Object>> values) {
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            while (rows.size() <= firstRow + i) {
+                rows.add(new ArrayList<>());
+            }
+            List<Object> row = rows.get(firstRow + i);
+            List<Object> cells = toCells(values.get(i));
+            while (row.size() < firstColumn + cells.size()) {
+                row.add("");
+            }
+            for (int j = 0; j < cells.size(); j++) {
+                row.set(firstColumn + j, cells.get(j));
+            }
+        }
+    }
+
+    private static int lastNonEmptyRow(List<List<Object>> rows) {
+        for (int r = rows.size() - 1; r >= 0; r--) {
+            for (Object cell : rows.get(r)) {
+                if (!"".equals(cell)) {
+                    return r;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Ячейки хранятся как записаны (числа остаются числами, чтобы при отражении в таблицу
+    // не стать текстом), строками они становятся только при чтении; null - пустая ячейка
+    static List<Object> toCells(List<Object> row) {
+        List<Object> cells = new ArrayList<>(row.size());
+        for (Object cell : row) {
+            cells.add(cell == null ? "" : cell);
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,418 @@
+package ru.absolute.bot.clients;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.ToNumberPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Файлы локальной базы листов в каталоге данных:
+ * снимок всех листов, журнал записей (JSON по строке на запись, только дописывается)
+ * и номер последней записи, уже отраженной в Google Sheets.
+ * Записи журнала, еще не отраженные в таблице, образуют очередь репликации и переживают перезапуск.
+ * Записи, которые не удалось применить при загрузке, переносятся в карантин и в таблицу не отправляются.
+ */
+class LocalSheetsStore {
+    private static final Logger logger = LoggerFactory.getLogger(LocalSheetsStore.class);
+    // Числа в ячейках читаются обратно как Long (или Double для дробных), а не как Double,
+    // иначе ID 5 после перезапуска превратился бы в "5.0"
+    private static final Gson GSON = new GsonBuilder()
+            .setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE)
+            .create();
+
+    /**
+     * Запись в лист: значения для точного диапазона. У добавления строк range - строки, занятые
+     * в локальной копии, а appendTo - диапазон, в конец которого строки добавляются в таблице.
+     * Перенос строк (movedFrom) фиксирует, что таблица поместила добавленные строки в другое место:
+     * локальные строки movedFrom переезжают в range. Переносы в таблицу не отправляются.
+     */
+    static class Entry {
+        long seq;
+        String range;
+        List<List<Object>> values;
+        String appendTo;
+        String movedFrom;
+        // Добавление уже отправлялось (или могло быть отправлено до перезапуска): перед повтором
+        // нужно проверить, не дошло ли оно до таблицы. В журнал не пишется
+        transient boolean sent;
+
+        Entry(long seq, String range, List<List<Object>> values) {
+            this.seq = seq;
+            this.range = range;
+            this.values = values;
+        }
+    }
+
+    private static class Snapshot {
+        long seq;
+        Map<String, List<List<Object>>> sheets;
+    }
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final Path replicatedFile;
+    private final Path quarantineFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Entry> pending = new ArrayDeque<>();
+
+    private FileChannel logChannel;
+    private long lastSeq = 0;
+    private long replicatedSeq = 0;
+    private int logEntries = 0;
+
+    LocalSheetsStore(Path dataDir) throws IOException {
+        Files.createDirectories(dataDir);
+        this.snapshotFile = dataDir.resolve("sheets-snapshot.json");
+        this.logFile = dataDir.resolve("sheets-oplog.jsonl");
+        this.replicatedFile = dataDir.resolve("sheets-replicated.seq");
+        this.quarantineFile = dataDir.resolve("sheets-oplog-quarantine.jsonl");
+    }
+
+    boolean exists() {
+        return Files.exists(snapshotFile);
+    }
+
+    /**
+     * Загружает снимок в локальное хранилище, применяет поверх него журнал
+     * и восстанавливает очередь записей, не отраженных в таблице.
+     */
+    void load(InMemorySheetsBackend local) throws IOException {
+        lock.lock();
+        try {
+            Snapshot snapshot;
+            try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+                snapshot = GSON.fromJson(reader, Snapshot.class);
+            } catch (JsonParseException e) {
+                throw new IOException("Поврежден снимок локальной базы " + snapshotFile, e);
+            }
+            snapshot.sheets.forEach(local::putSheet);
+            lastSeq = snapshot.seq;
+            replicatedSeq = Files.exists(replicatedFile)
+                    ? Long.parseLong(Files.readString(replicatedFile).trim())
+                    : snapshot.seq;
+
+            if (Files.exists(logFile)) {
+                replayLog(local);
+            }
+            openLog();
+            logger.info("Локальная база загружена: запись {}, ожидают отправки в таблицу {}", lastSeq, pending.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayLog(InMemorySheetsBackend local) throws IOException {
+        Set<Long> quarantined = quarantinedSeqs();
+        byte[] data = Files.readAllBytes(logFile);
+        int validLength = 0;
+        ByteArrayOutputStream kept = new ByteArrayOutputStream(data.length);
+        List<String> corrupt = new ArrayList<>();
+        while (validLength < data.length) {
+            int end = validLength;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            if (end == data.length) {
+                break; // Последняя строка недописана
+            }
+
+            String line = new String(data, validLength, end - validLength, StandardCharsets.UTF_8);
+            Entry entry;
+            int lineStart = validLength;
+            validLength = end + 1;
+            try {
+                entry = GSON.fromJson(line, Entry.class);
+            } catch (JsonParseException e) {
+                // Строка дописана целиком, но испорчена: следующие записи уже сохранены на диск
+                // и подтверждены пользователям, поэтому пропускаем только ее
+                logger.error("Поврежденная запись журнала локальной базы после записи {} перенесена в карантин: {}",
+                        lastSeq, e.getMessage());
+                corrupt.add(line);
+                continue;
+            }
+            kept.write(data, lineStart, validLength - lineStart);
+            logEntries++;
+            if (entry == null || entry.seq <= lastSeq) {
+                continue;
+            }
+            lastSeq = entry.seq;
+            if (quarantined.contains(entry.seq)) {
+                continue;
+            }
+            try {
+                if (entry.movedFrom != null) {
+                    local.moveRows(entry.movedFrom, entry.range);
+                    remapPending(entry.movedFrom, entry.range);
+                    continue;
+                }
+                local.applyUpdate(entry.range, entry.values);
+            } catch (IOException | RuntimeException e) {
+                // Запись, которую нельзя применить, не должна мешать каждому следующему запуску
+                logger.error("Запись журнала {} ({}) не применяется и перенесена в карантин: {}",
+                        entry.seq, entry.range, e.getMessage());
+                Files.writeString(quarantineFile, line + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                quarantined.add(entry.seq);
+                continue;
+            }
+            if (entry.seq > replicatedSeq) {
+                entry.sent = entry.appendTo != null;
+                pending.add(entry);
+            }
+        }
+
+        if (!corrupt.isEmpty()) {
+            Files.writeString(quarantineFile, String.join("\n", corrupt) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            // Переписываем журнал без поврежденных строк (и без оборванного хвоста)
+            Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+            Files.write(temp, kept.toByteArray());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.error("Из журнала локальной базы убрано поврежденных строк: {} (см. {})",
+                    corrupt.size(), quarantineFile);
+        } else if (validLength < data.length) {
+            // Процесс упал посреди записи: отрезаем хвост, чтобы новые записи не шли после мусора
+            logger.warn("Журнал локальной базы оборван после записи {}. Отброшено {} байт.", lastSeq, data.length - validLength);
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private Set<Long> quarantinedSeqs() throws IOException {
+        Set<Long> seqs = new HashSet<>();
+        if (!Files.exists(quarantineFile)) {
+            return seqs;
+        }
+        for (String line : Files.readAllLines(quarantineFile, StandardCharsets.UTF_8)) {
+            try {
+                Entry entry = GSON.fromJson(line, Entry.class);
+                if (entry != null) {
+                    seqs.add(entry.seq);
+                }
+            } catch (JsonParseException e) {
+                logger.debug("Пропущена поврежденная строка карантина журнала"); // Поврежденные строки журнала попадают сюда как есть
+            }
+        }
+        return seqs;
+    }
+
+    /**
+     * Дописывает запись в журнал и сбрасывает ее на диск. Возвращает номер записи.
+     */
+    long record(String range, List<List<Object>> values) throws IOException {
+        return recordAppend(null, range, values);
+    }
+
+    /**
+     * Записывает добавление строк: в таблицу оно уйдет как append в конец appendTo,
+     * локально строки заняли range.
+     */
+    long recordAppend(String appendTo, String range, List<List<Object>> values) throws IOException {
+        lock.lock();
+        try {
+            Entry entry = new Entry(lastSeq + 1, range, values);
+            entry.appendTo = appendTo;
+            write(entry);
+            pending.add(entry);
+            return entry.seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает перенос локальных строк from в to и сдвигает туда же ожидающие отправки
+     * обновления этих строк.
+     */
+    void recordMove(String from, String to) throws IOException {
+        lock.lock();
+        try {
+            Entry entry = new Entry(lastSeq + 1, to, null);
+            entry.movedFrom = from;
+            write(entry);
+            remapPending(from, to);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        byte[] line = (GSON.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+        logChannel.force(false);
+
+        lastSeq = entry.seq;
+        logEntries++;
+    }
+
+    /**
+     * Обновления, целиком попадающие в строки from, переносятся на тот же сдвиг, что и строки.
+     */
+    private void remapPending(String from, String to) {
+        A1Range source = A1Range.parse(from);
+        int shift = A1Range.parse(to).firstRow() - source.firstRow();
+        for (Entry entry : pending) {
+            if (entry.appendTo != null) {
+                continue;
+            }
+            A1Range target = A1Range.parse(entry.range);
+            if (target.sheet().equals(source.sheet())
+                    && target.firstRow() >= source.firstRow() && target.lastRow() <= source.lastRow()
+                    && target.lastColumn() != Integer.MAX_VALUE) {
+                entry.range = A1Range.format(target.sheet(), target.firstRow() + shift, target.firstColumn(),
+                        target.lastRow() + shift, target.lastColumn());
+            }
+        }
+    }
+
+    /**
+     * Первые записи очереди репликации, не больше max.
+     */
+    List<Entry> pending(int max) {
+        lock.lock();
+        try {
+            List<Entry> batch = new ArrayList<>(Math.min(max, pending.size()));
+            for (Entry entry : pending) {
+                if (batch.size() >= max) {
+                    break;
+                }
+                batch.add(entry);
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Отмечает записи до seq включительно как отраженные в таблице.
+     */
+    void markReplicated(long seq) throws IOException {
+        lock.lock();
+        try {
+            while (!pending.isEmpty() && pending.peekFirst().seq <= seq) {
+                pending.pollFirst();
+            }
+            replicatedSeq = Math.max(replicatedSeq, seq);
+            writeAtomically(replicatedFile, Long.toString(replicatedSeq));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long lastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int logEntries() {
+        lock.lock();
+        try {
+            return logEntries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сохраняет снимок листов и очищает журнал. Выполняется, только когда очередь репликации пуста,
+     * иначе журнал еще нужен для отправки записей в таблицу.
+     */
+    boolean snapshot(Map<String, List<List<Object>>> sheets) throws IOException {
+        lock.lock();
+        try {
+            if (!pending.isEmpty()) {
+                return false;
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.seq = lastSeq;
+            snapshot.sheets = sheets;
+            Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(snapshot, writer);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (logChannel != null) {
+                logChannel.close();
+            }
+            Files.deleteIfExists(logFile);
+            logEntries = 0;
+            replicatedSeq = lastSeq;
+            writeAtomically(replicatedFile, Long.toString(replicatedSeq));
+            openLog();
+            logger.info("Снимок локальной базы сохранен (запись {}), журнал очищен.", lastSeq);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            if (logChannel != null) {
+                logChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Ошибка при закрытии журнала локальной базы", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openLog() throws IOException {
+        logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
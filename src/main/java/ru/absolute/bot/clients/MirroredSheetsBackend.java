@@ -0,0 +1,386 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Локальная база листов с отражением в Google Sheets.
+ * Все чтения и записи обслуживаются из памяти, записи сохраняются в журнал в каталоге данных
+ * и в фоне переносятся в таблицу. Изменения, сделанные в таблице вручную (новые боссы, предметы),
+ * периодически забираются обратно, когда в очереди нет неотправленных записей.
+ */
+public class MirroredSheetsBackend implements SheetsBackend {
+    private static final Logger logger = LoggerFactory.getLogger(MirroredSheetsBackend.class);
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000; // 5 минут
+    private static final int COMPACT_AFTER_ENTRIES = 1000;
+
+    private final InMemorySheetsBackend local = InMemorySheetsBackend.unthrottled();
+    private final SheetsBackend remote;
+    private final LocalSheetsStore store;
+    private final List<String> mirroredSheets;
+    private final int replicationBatchSize;
+    // Запись в локальную базу и подмена листов данными из таблицы не должны пересекаться
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sheets-mirror");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int replicationFailures = 0;
+    private long nextReplicationTime = 0;
+
+    public MirroredSheetsBackend(SheetsBackend remote, Path dataDir, List<String> mirroredSheets,
+                                 long replicationIntervalMillis, long pullIntervalMillis, int replicationBatchSize)
+            throws IOException {
+        this.remote = remote;
+        this.store = new LocalSheetsStore(dataDir);
+        this.mirroredSheets = mirroredSheets;
+        this.replicationBatchSize = replicationBatchSize;
+
+        if (store.exists()) {
+            store.load(local);
+        } else {
+            logger.info("Локальная база в {} не найдена. Загружаем листы из Google Sheets...", dataDir);
+            if (!pullFromRemote()) {
+                throw new IOException("Не удалось загрузить листы из Google Sheets для локальной базы");
+            }
+        }
+
+        scheduler.scheduleWithFixedDelay(this::replicatePending,
+                replicationIntervalMillis, replicationIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::pullFromRemote,
+                pullIntervalMillis, pullIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Локальная база листов в {}: отправка в таблицу каждые {} мс, загрузка из таблицы каждые {} мс",
+                dataDir, replicationIntervalMillis, pullIntervalMillis);
+    }
+
+    /**
+     * Создает локальную базу по параметрам DATA_DIR и SHEETS_MIRROR_* из конфигурации.
+     */
+    public static MirroredSheetsBackend fromConfig(SheetsBackend remote) throws IOException {
+        return new MirroredSheetsBackend(
+                remote,
+                Path.of(ConfigLoader.getProperty("DATA_DIR", "/data")),
+                SheetsBackend.configuredSheets(),
+                ConfigLoader.getLongProperty("SHEETS_MIRROR_REPLICATION_INTERVAL_MS", 1000),
+                ConfigLoader.getLongProperty("SHEETS_MIRROR_PULL_INTERVAL_MS", 10 * 60 * 1000),
+                (int) ConfigLoader.getLongProperty("SHEETS_MIRROR_BATCH_SIZE", 50)
+        );
+    }
+
+    @Override
+    public ValueRange getValues(String range, Priority priority) throws IOException {
+        return local.getValues(range, priority);
+    }
+
+    @Override
+    public List<ValueRange> batchGetValues(List<String> ranges) throws IOException {
+        return local.batchGetValues(ranges);
+    }
+
+    @Override
+    public List<ValueRange> batchGetIfChanged(List<List<String>> probeRanges, List<String> fullRanges) throws IOException {
+        return local.batchGetIfChanged(probeRanges, fullRanges);
+    }
+
+    @Override
+    public void rememberFingerprint(List<String> probeRanges, List<ValueRange> probes) {
+        local.rememberFingerprint(probeRanges, probes);
+    }
+
+    /**
+     * Проверяет диапазон, записывает его в журнал (с fsync), затем в память.
+     * В таблицу запись уходит в фоне. Запись, которую нельзя применить, в журнал не попадает.
+     */
+    @Override
+    public void updateValues(String range, ValueRange body) throws IOException {
+        List<List<Object>> values = toCells(body.getValues());
+        writeLock.lock();
+        try {
+            local.validate(range);
+            store.record(range, values);
+            local.applyUpdate(range, values);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> updateValuesBatched(String range, ValueRange body) {
+        try {
+            updateValues(range, body);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Определяет точный диапазон новых строк в локальном листе, записывает добавление в журнал
+     * и только затем добавляет строки. В таблицу строки уходят настоящим append, чтобы не затереть
+     * строки, добавленные туда вручную после последней загрузки.
+     */
+    @Override
+    public AppendValuesResponse appendValues(String range, ValueRange body) throws IOException {
+        List<List<Object>> values = toCells(body.getValues());
+        writeLock.lock();
+        try {
+            String target = local.resolveAppend(range, values);
+            store.recordAppend(range, target, values);
+            local.applyUpdate(target, values);
+            return InMemorySheetsBackend.appendResponse(target, values.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Запись принимается после сохранения в журнал локальной базы, отправку в таблицу повторяет репликация.
+     */
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyAsync(SheetsCall<T> call) {
+        return local.supplyAsync(call);
+    }
+
+    /**
+     * Количество записей, еще не отраженных в таблице.
+     */
+    public int getPendingReplication() {
+        return store.pendingCount();
+    }
+
+    /**
+     * Отправляет в таблицу очередную порцию записей из журнала по порядку. Подряд идущие обновления
+     * точных диапазонов уходят вместе, и после сбоя их можно безопасно отправить повторно.
+     * Добавления строк отправляются по одному и сразу отмечаются отправленными.
+     */
+    private void replicatePending() {
+        if (System.currentTimeMillis() < nextReplicationTime) {
+            return;
+        }
+        List<LocalSheetsStore.Entry> batch = store.pending(replicationBatchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            int start = 0;
+            while (start < batch.size()) {
+                if (batch.get(start).appendTo != null) {
+                    replicateAppend(batch.get(start));
+                    start++;
+                    continue;
+                }
+                int end = start;
+                List<CompletableFuture<Void>> writes = new ArrayList<>();
+                while (end < batch.size() && batch.get(end).appendTo == null) {
+                    LocalSheetsStore.Entry entry = batch.get(end++);
+                    writes.add(remote.updateValuesBatched(entry.range, new ValueRange().setValues(entry.values)));
+                }
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+                store.markReplicated(batch.get(end - 1).seq);
+                start = end;
+            }
+            replicationFailures = 0;
+            logger.debug("В таблицу отправлено {} записей, в очереди {}", batch.size(), store.pendingCount());
+
+            if (store.pendingCount() == 0 && store.logEntries() >= COMPACT_AFTER_ENTRIES) {
+                compact();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            replicationFailures++;
+            long delay = Math.min(MAX_RETRY_DELAY, 1000L << Math.min(replicationFailures - 1, 16));
+            nextReplicationTime = System.currentTimeMillis() + delay;
+            logger.warn("Не удалось отправить {} записей в Google Sheets (попытка {}). Повтор через {} мс.",
+                    batch.size(), replicationFailures, delay, e);
+        } catch (RuntimeException e) {
+            logger.error("Ошибка при отправке записей в Google Sheets", e);
+        }
+    }
+
+    /**
+     * Добавляет строки в таблицу. Если таблица поместила их не туда, где они стоят локально
+     * (в таблицу вручную добавили или удалили строки), локальные строки и ожидающие отправки
+     * обновления этих строк переносятся туда, куда их записала таблица.
+     * Добавление, которое уже отправлялось (ответ не дошел, истек таймаут, бот перезапустился),
+     * могло дойти до таблицы: перед повтором лист читается и строки ищутся в нем, чтобы не добавить их дважды.
+     */
+    private void replicateAppend(LocalSheetsStore.Entry entry) throws IOException {
+        A1Range localRange = A1Range.parse(entry.range);
+        Integer remoteFirstRow = entry.sent ? findAppended(entry, localRange) : null;
+        if (remoteFirstRow != null) {
+            logger.info("Строки {} уже добавлены в таблицу (строка {}). Повторно не отправляем.",
+                    entry.range, remoteFirstRow + 1);
+        } else {
+            entry.sent = true;
+            AppendValuesResponse response = remote.appendValues(entry.appendTo, new ValueRange().setValues(entry.values));
+            String remoteRange = response != null && response.getUpdates() != null
+                    ? response.getUpdates().getUpdatedRange() : null;
+            if (remoteRange != null) {
+                remoteFirstRow = A1Range.parse(remoteRange).firstRow();
+            } else {
+                logger.warn("Google Sheets не вернул диапазон добавленных строк {}", entry.range);
+            }
+        }
+
+        if (remoteFirstRow != null && remoteFirstRow != localRange.firstRow()) {
+            String target = A1Range.format(localRange.sheet(), remoteFirstRow, localRange.firstColumn(),
+                    remoteFirstRow + localRange.lastRow() - localRange.firstRow(), localRange.lastColumn());
+            writeLock.lock();
+            try {
+                local.validate(target);
+                store.recordMove(entry.range, target);
+                local.moveRows(entry.range, target);
+            } finally {
+                writeLock.unlock();
+            }
+            logger.info("Таблица добавила строки {} в {}. Локальная копия сдвинута.", entry.range, target);
+        }
+        store.markReplicated(entry.seq);
+    }
+
+    /**
+     * Ищет в листе таблицы строки добавления (с конца: добавленные строки обычно последние).
+     * Возвращает номер первой строки (с 0) или null, если строк в таблице нет.
+     */
+    private Integer findAppended(LocalSheetsStore.Entry entry, A1Range localRange) throws IOException {
+        List<List<Object>> rows = remote.getValues(localRange.sheet()).getValues();
+        if (rows == null || entry.values == null || entry.values.isEmpty()) {
+            return null;
+        }
+        for (int first = rows.size() - entry.values.size(); first >= 0; first--) {
+            boolean matches = true;
+            for (int i = 0; i < entry.values.size() && matches; i++) {
+                matches = sameCells(rows.get(first + i), localRange.firstColumn(), entry.values.get(i));
+            }
+            if (matches) {
+                return first;
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameCells(List<Object> row, int firstColumn, List<Object> expected) {
+        for (int i = 0; i < expected.size(); i++) {
+            int column = firstColumn + i;
+            String actual = column < row.size() ? String.valueOf(row.get(column)) : "";
+            String value = expected.get(i) != null ? String.valueOf(expected.get(i)) : "";
+            if (!actual.equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Заменяет локальные листы содержимым таблицы, если все локальные записи уже отправлены.
+     * Возвращает true, если листы обновлены.
+     */
+    private boolean pullFromRemote() {
+        long seqBeforeRead = store.lastSeq();
+        if (store.pendingCount() > 0) {
+            logger.debug("Есть неотправленные записи. Загрузка листов из таблицы отложена.");
+            return false;
+        }
+
+        try {
+            List<ValueRange> ranges = remote.batchGetValues(mirroredSheets);
+            writeLock.lock();
+            try {
+                if (store.lastSeq() != seqBeforeRead || store.pendingCount() > 0) {
+                    logger.debug("Во время загрузки листов появились локальные записи. Загрузка отложена.");
+                    return false;
+                }
+                for (int i = 0; i < mirroredSheets.size(); i++) {
+                    List<List<Object>> values = ranges.get(i).getValues();
+                    local.putSheet(mirroredSheets.get(i), values != null ? values : List.of());
+                }
+                store.snapshot(local.exportSheets());
+            } finally {
+                writeLock.unlock();
+            }
+            logger.info("Локальная база обновлена из Google Sheets.");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка при загрузке листов из Google Sheets", e);
+            return false;
+        }
+    }
+
+    private void compact() throws IOException {
+        writeLock.lock();
+        try {
+            store.snapshot(local.exportSheets());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static List<List<Object>> toCells(List<List<Object>> values) {
+        if (values == null) {
+            return List.of();
+        }
+        List<List<Object>> cells = new ArrayList<>(values.size());
+        for (List<Object> row : values) {
+            cells.add(InMemorySheetsBackend.toCells(row));
+        }
+        return cells;
+    }
+
+    /**
+     * Пытается отправить оставшиеся записи в таблицу; что не успело уйти, останется в журнале
+     * и будет отправлено после перезапуска.
+     */
+    @Override
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        nextReplicationTime = 0;
+        int before;
+        do {
+            before = store.pendingCount();
+            replicatePending();
+        } while (store.pendingCount() > 0 && store.pendingCount() < before);
+
+        if (store.pendingCount() == 0) {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.warn("Не удалось сохранить снимок локальной базы", e);
+            }
+        } else {
+            logger.warn("В таблицу не отправлено {} записей. Они будут отправлены после перезапуска.", store.pendingCount());
+        }
+        store.close();
+        remote.shutdown();
+        local.shutdown();
+    }
+}
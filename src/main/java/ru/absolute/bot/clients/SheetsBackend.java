@@ -0,0 +1,125 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Хранилище листов, с которым работают DAO. Основная реализация - {@link MirroredSheetsBackend}
+ * (локальная база с отражением в таблицу), прямой доступ к таблице - {@link GoogleSheetsClient},
+ * для замеров и нагрузочных тестов без сети - {@link InMemorySheetsBackend}.
+ */
+public interface SheetsBackend {
+
+    /**
+     * MIRROR - локальная база в DATA_DIR с фоновым отражением в Google Sheets,
+     * GOOGLE - прямые запросы к Google Sheets, MEMORY - сгенерированные данные в памяти.
+     */
+    enum Type {
+        MIRROR, GOOGLE, MEMORY
+    }
+
+    String CHECKERS_SHEET = "checkers";
+
+    /**
+     * Создает хранилище по параметру SHEETS_BACKEND (по умолчанию MIRROR).
+     */
+    static SheetsBackend fromConfig() throws IOException {
+        Type type = Type.valueOf(ConfigLoader.getProperty("SHEETS_BACKEND", Type.MIRROR.name()).trim().toUpperCase());
+        return switch (type) {
+            case MIRROR -> MirroredSheetsBackend.fromConfig(new GoogleSheetsClient());
+            case GOOGLE -> new GoogleSheetsClient();
+            case MEMORY -> InMemorySheetsBackend.fromConfig();
+        };
+    }
+
+    /**
+     * Листы таблицы, с которыми работает бот.
+     */
+    static List<String> configuredSheets() {
+        return List.of(
+                ConfigLoader.getProperty("GOOGLE_BOSSES_SHEET"),
+                ConfigLoader.getProperty("GOOGLE_ITEMS_SHEET"),
+                CHECKERS_SHEET,
+                ConfigLoader.getProperty("GOOGLE_EVENTS_SHEET"));
+    }
+
+    default ValueRange getValues(String range) throws IOException {
+        return getValues(range, Priority.NORMAL);
+    }
+
+    /**
+     * Читает диапазон с указанным приоритетом в квоте чтений.
+     */
+    ValueRange getValues(String range, Priority priority) throws IOException;
+
+    /**
+     * Получает несколько диапазонов одним запросом. Результаты возвращаются в порядке запрошенных диапазонов.
+     */
+    List<ValueRange> batchGetValues(List<String> ranges) throws IOException;
+
+    /**
+     * Читает полные диапазоны только для листов, у которых изменился отпечаток узких диапазонов.
+     *
+     * @param probeRanges для каждого полного диапазона - узкие диапазоны, по которым судим об изменении
+     * @return список в порядке fullRanges; null на месте неизменившихся диапазонов
+     */
+    List<ValueRange> batchGetIfChanged(List<List<String>> probeRanges, List<String> fullRanges) throws IOException;
+
+    /**
+     * Запоминает отпечаток узких диапазонов, прочитанных вместе с полными данными.
+     */
+    void rememberFingerprint(List<String> probeRanges, List<ValueRange> probes);
+
+    /**
+     * Обновляет диапазон и ждет завершения записи.
+     */
+    void updateValues(String range, ValueRange body) throws IOException;
+
+    /**
+     * Ставит обновление в очередь записи; реализация может объединять несколько обновлений в один запрос.
+     */
+    CompletableFuture<Void> updateValuesBatched(String range, ValueRange body);
+
+    AppendValuesResponse appendValues(String range, ValueRange body) throws IOException;
+
+    /**
+     * true, если принятая запись уже надежно сохранена на диск и хранилище само повторяет ее
+     * отправку в таблицу: тогда журналу операций не нужно дублировать запись и повторы.
+     */
+    default boolean isDurable() {
+        return false;
+    }
+
+    /**
+     * Выполняет обращение к хранилищу на виртуальном потоке.
+     * IOException передается в future обернутым в CompletionException.
+     */
+    <T> CompletableFuture<T> supplyAsync(SheetsCall<T> call);
+
+    default CompletableFuture<ValueRange> getValuesAsync(String range) {
+        return supplyAsync(() -> getValues(range));
+    }
+
+    default CompletableFuture<List<ValueRange>> batchGetValuesAsync(List<String> ranges) {
+        return supplyAsync(() -> batchGetValues(ranges));
+    }
+
+    default CompletableFuture<Void> updateValuesAsync(String range, ValueRange body) {
+        return updateValuesBatched(range, body);
+    }
+
+    default CompletableFuture<AppendValuesResponse> appendValuesAsync(String range, ValueRange body) {
+        return supplyAsync(() -> appendValues(range, body));
+    }
+
+    /**
+     * Завершает фоновые операции (в том числе отправляет накопленные записи).
+     */
+    void shutdown();
+}
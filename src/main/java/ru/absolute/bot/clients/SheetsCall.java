@@ -0,0 +1,11 @@
+package ru.absolute.bot.clients;
+
+import java.io.IOException;
+
+/**
+ * Обращение к хранилищу листов, которое можно выполнить асинхронно через {@link SheetsBackend#supplyAsync}.
+ */
+@FunctionalInterface
+public interface SheetsCall<T> {
+    T call() throws IOException;
+}
@@ -0,0 +1,116 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отпечатки (SHA-256 содержимого) диапазонов-проб: по ним решаем, нужно ли разбирать лист заново.
+ * Ячейки входят в отпечаток вместе с длиной, поэтому разные данные не дают одинаковый отпечаток
+ * из-за склейки соседних ячеек.
+ */
+class SheetsChangeDetector {
+    private static final Logger logger = LoggerFactory.getLogger(SheetsChangeDetector.class);
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * Сначала одним batchGet читаются узкие диапазоны-отпечатки (например, столбцы, которые разбирает бот,
+     * кроме часто меняющихся), затем вторым batchGet - только полные диапазоны, чей отпечаток отличается
+     * от запомненного. Полному диапазону может соответствовать несколько диапазонов-отпечатков.
+     * Новые отпечатки запоминаются только после того, как полные диапазоны прочитаны: если второй запрос
+     * не удался, изменение будет замечено при следующей проверке.
+     * Если ничего не изменилось, обходится одним маленьким запросом.
+     */
+    List<ValueRange> batchGetIfChanged(SheetsBackend backend, List<List<String>> probeRanges, List<String> fullRanges)
+            throws IOException {
+        List<String> flatProbes = new ArrayList<>();
+        probeRanges.forEach(flatProbes::addAll);
+        List<ValueRange> probes = backend.batchGetValues(flatProbes);
+
+        List<ValueRange> result = new ArrayList<>(fullRanges.size());
+        List<String> changedRanges = new ArrayList<>();
+        List<Integer> changedPositions = new ArrayList<>();
+        Map<String, String> updated = new HashMap<>();
+        int offset = 0;
+        for (int i = 0; i < fullRanges.size(); i++) {
+            result.add(null);
+            List<String> probeGroup = probeRanges.get(i);
+            List<ValueRange> groupProbes = probes.subList(offset, offset + probeGroup.size());
+            offset += probeGroup.size();
+
+            String key = key(probeGroup);
+            String fingerprint = fingerprint(groupProbes);
+            if (fingerprint.equals(fingerprints.get(key))) {
+                continue;
+            }
+            updated.put(key, fingerprint);
+
+            if (probeGroup.size() == 1 && probeGroup.get(0).equals(fullRanges.get(i))) {
+                result.set(i, groupProbes.get(0)); // Отпечаток и есть весь диапазон
+            } else {
+                changedRanges.add(fullRanges.get(i));
+                changedPositions.add(i);
+            }
+        }
+
+        if (!changedRanges.isEmpty()) {
+            List<ValueRange> changed = backend.batchGetValues(changedRanges);
+            for (int i = 0; i < changed.size(); i++) {
+                result.set(changedPositions.get(i), changed.get(i));
+            }
+        }
+        fingerprints.putAll(updated);
+        logger.debug("Проверка отпечатков: изменилось {} из {} диапазонов.",
+                result.stream().filter(range -> range != null).count(), fullRanges.size());
+        return result;
+    }
+
+    void remember(List<String> probeRanges, List<ValueRange> probes) {
+        fingerprints.put(key(probeRanges), fingerprint(probes));
+    }
+
+    private static String key(List<String> probeRanges) {
+        return String.join(",", probeRanges);
+    }
+
+    private static String fingerprint(List<ValueRange> ranges) {
+        MessageDigest digest = sha256();
+        for (ValueRange range : ranges) {
+            List<List<Object>> rows = range == null || range.getValues() == null ? List.of() : range.getValues();
+            update(digest, rows.size());
+            for (List<Object> row : rows) {
+                update(digest, row.size());
+                for (Object cell : row) {
+                    byte[] bytes = String.valueOf(cell).getBytes(StandardCharsets.UTF_8);
+                    update(digest, bytes.length);
+                    digest.update(bytes);
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update(new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value});
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e); // Есть в любой JVM
+        }
+    }
+}
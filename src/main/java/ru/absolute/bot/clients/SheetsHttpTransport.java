@@ -0,0 +1,132 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP-транспорт для Google Sheets.
+ * В режиме POOLED используется пул keep-alive соединений Apache HttpClient, поэтому серия запросов
+ * не платит за новое соединение и TLS-рукопожатие. Режим NET оставляет прежний NetHttpTransport.
+ */
+public class SheetsHttpTransport {
+    private static final Logger logger = LoggerFactory.getLogger(SheetsHttpTransport.class);
+
+    public enum Mode {
+        POOLED, NET
+    }
+
+    private final Mode mode;
+    private final HttpTransport transport;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    // Счетчики: сколько соединений открыто и сколько запросов отправлено (остальные шли по открытым)
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder requestsSent = new LongAdder();
+
+    public SheetsHttpTransport(Mode mode, int poolSize, long keepAliveMillis, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.mode = mode;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.transport = mode == Mode.POOLED
+                ? new ApacheHttpTransport(createPooledClient(poolSize, keepAliveMillis))
+                : new NetHttpTransport();
+        logger.info("HTTP-транспорт Google Sheets: {} (пул {}, keep-alive {} мс, таймауты {}/{} мс)",
+                mode, poolSize, keepAliveMillis, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * Создает транспорт по параметрам SHEETS_HTTP_* из конфигурации.
+     */
+    public static SheetsHttpTransport fromConfig() {
+        Mode mode = Mode.valueOf(ConfigLoader.getProperty("SHEETS_HTTP_TRANSPORT", Mode.POOLED.name()).trim().toUpperCase());
+        return new SheetsHttpTransport(
+                mode,
+                (int) ConfigLoader.getLongProperty("SHEETS_HTTP_POOL_SIZE", 8),
+                ConfigLoader.getLongProperty("SHEETS_HTTP_KEEP_ALIVE_MS", 60_000),
+                (int) ConfigLoader.getLongProperty("SHEETS_HTTP_CONNECT_TIMEOUT_MS", 10_000),
+                (int) ConfigLoader.getLongProperty("SHEETS_HTTP_READ_TIMEOUT_MS", 30_000)
+        );
+    }
+
+    private HttpClient createPooledClient(int poolSize, long keepAliveMillis) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(),
+                (route, config) -> {
+                    connectionsOpened.increment();
+                    return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+                });
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+        connectionManager.setValidateAfterInactivity(2_000);
+
+        return ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> keepAliveMillis)
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Добавляет к инициализатору запросов таймауты и подсчет отправленных запросов.
+     */
+    public HttpRequestInitializer initializer(HttpRequestInitializer delegate) {
+        return request -> {
+            delegate.initialize(request);
+            request.setConnectTimeout(connectTimeoutMillis);
+            request.setReadTimeout(readTimeoutMillis);
+            requestsSent.increment();
+        };
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Количество запросов, отправленных по уже открытым соединениям. Считается только в режиме POOLED.
+     */
+    public long getConnectionsReused() {
+        if (mode != Mode.POOLED) {
+            return 0;
+        }
+        return Math.max(0, requestsSent.sum() - connectionsOpened.sum());
+    }
+
+    public long getRequestsSent() {
+        return requestsSent.sum();
+    }
+
+    public void shutdown() {
+        logger.info("HTTP-транспорт Google Sheets: запросов {}, открыто соединений {}, переиспользовано {}",
+                getRequestsSent(), getConnectionsOpened(), getConnectionsReused());
+        try {
+            transport.shutdown();
+        } catch (IOException e) {
+            logger.warn("Ошибка при закрытии HTTP-транспорта", e);
+        }
+    }
+}
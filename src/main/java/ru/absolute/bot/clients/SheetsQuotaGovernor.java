@@ -0,0 +1,252 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограничитель запросов к Google Sheets на стороне клиента.
+ * Чтения и записи расходуют отдельные корзины токенов, пополняемые с поминутной квотой.
+ * Запросы с высоким приоритетом идут первыми и могут использовать резерв корзины,
+ * недоступный запросам с низким приоритетом. Ответы 429/503 повторяются
+ * с экспоненциальной задержкой и случайным разбросом; добавление строк - только при 429.
+ */
+public class SheetsQuotaGovernor {
+    private static final Logger logger = LoggerFactory.getLogger(SheetsQuotaGovernor.class);
+
+    /**
+     * APPEND - добавление строк: расходует квоту записей, но не идемпотентно. Ответ 503 может прийти
+     * на уже выполненное добавление, и повтор продублирует строку, поэтому повторяется только 429.
+     */
+    public enum Kind {
+        READ, WRITE, APPEND
+    }
+
+    /**
+     * HIGH - запись убийств и связанные с ней чтения, NORMAL - обычные запросы,
+     * LOW - фоновые чтения и автозаполнение.
+     */
+    public enum Priority {
+        HIGH(0.0), NORMAL(0.1), LOW(0.3);
+
+        // Доля корзины, которую запрос этого приоритета оставляет более важным запросам
+        private final double reservedShare;
+
+        Priority(double reservedShare) {
+            this.reservedShare = reservedShare;
+        }
+    }
+
+    private final TokenBucket readBucket;
+    private final TokenBucket writeBucket;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder retriedRequests = new LongAdder();
+
+    public SheetsQuotaGovernor(int readsPerMinute, int writesPerMinute, int maxAttempts,
+                               long baseBackoffMillis, long maxBackoffMillis) {
+        this.readBucket = new TokenBucket(Kind.READ, readsPerMinute);
+        this.writeBucket = new TokenBucket(Kind.WRITE, writesPerMinute);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Создает ограничитель по параметрам SHEETS_* из конфигурации.
+     * По умолчанию используется пользовательская квота Google: 60 чтений и 60 записей в минуту.
+     */
+    public static SheetsQuotaGovernor fromConfig() {
+        return new SheetsQuotaGovernor(
+                (int) ConfigLoader.getLongProperty("SHEETS_READS_PER_MINUTE", 60),
+                (int) ConfigLoader.getLongProperty("SHEETS_WRITES_PER_MINUTE", 60),
+                (int) ConfigLoader.getLongProperty("SHEETS_RETRY_MAX_ATTEMPTS", 5),
+                ConfigLoader.getLongProperty("SHEETS_RETRY_BASE_DELAY_MS", 500),
+                ConfigLoader.getLongProperty("SHEETS_RETRY_MAX_DELAY_MS", 30_000)
+        );
+    }
+
+    /**
+     * Выполняет запрос, дождавшись токена нужной корзины, и повторяет его при ответах 429/503
+     * (для APPEND - только 429).
+     */
+    public <T> T execute(Kind kind, Priority priority, SheetsCall<T> call) throws IOException {
+        TokenBucket bucket = kind == Kind.READ ? readBucket : writeBucket;
+        for (int attempt = 1; ; attempt++) {
+            acquire(bucket, priority);
+            try {
+                return call.call();
+            } catch (GoogleJsonResponseException e) {
+                int status = e.getStatusCode();
+                boolean retryable = status == 429 || (status == 503 && kind != Kind.APPEND);
+                if (!retryable || attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                // Квота исчерпана на стороне Google: обнуляем корзину, чтобы притормозить и остальные запросы
+                bucket.drain();
+                retriedRequests.increment();
+                long delay = backoffDelay(attempt);
+                logger.warn("Google Sheets ответил {} на {} запрос (попытка {}/{}). Повтор через {} мс.",
+                        status, kind, attempt, maxAttempts, delay);
+                sleep(delay);
+            }
+        }
+    }
+
+    private void acquire(TokenBucket bucket, Priority priority) throws IOException {
+        try {
+            if (bucket.acquire(priority)) {
+                throttledRequests.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прерывание при ожидании квоты Google Sheets", e);
+        }
+    }
+
+    private long backoffDelay(int attempt) {
+        long delay = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        // Половина задержки фиксирована, половина случайна, чтобы повторы не шли одновременно
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прерывание при ожидании повтора запроса к Google Sheets", e);
+        }
+    }
+
+    public double getRemainingReads() {
+        return readBucket.remaining();
+    }
+
+    public double getRemainingWrites() {
+        return writeBucket.remaining();
+    }
+
+    /**
+     * Количество запросов, которым пришлось ждать токен.
+     */
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    /**
+     * Количество повторов после ответов 429/503.
+     */
+    public long getRetriedRequests() {
+        return retriedRequests.sum();
+    }
+
+    public String describe() {
+        return String.format("чтений осталось %.1f, записей осталось %.1f, ожидали квоту %d, повторов %d",
+                getRemainingReads(), getRemainingWrites(), getThrottledRequests(), getRetriedRequests());
+    }
+
+    /**
+     * Корзина токенов с поминутным пополнением. ReentrantLock вместо synchronized,
+     * чтобы ожидание на виртуальном потоке не занимало поток-носитель.
+     */
+    private static class TokenBucket {
+        private final Kind kind;
+        private final double capacity;
+        private final double refillPerMilli;
+        private final int[] waiting = new int[Priority.values().length];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        private double tokens;
+        private long lastRefillTime;
+
+        TokenBucket(Kind kind, int perMinute) {
+            this.kind = kind;
+            this.capacity = Math.max(1, perMinute);
+            this.refillPerMilli = capacity / TimeUnit.MINUTES.toMillis(1);
+            this.tokens = capacity;
+            this.lastRefillTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Забирает токен, при необходимости ожидая. Возвращает true, если пришлось ждать.
+         */
+        boolean acquire(Priority priority) throws InterruptedException {
+            boolean throttled = false;
+            lock.lock();
+            try {
+                waiting[priority.ordinal()]++;
+                try {
+                    while (true) {
+                        refill();
+                        double reserve = capacity * priority.reservedShare;
+                        if (!higherPriorityWaiting(priority) && tokens - 1 >= reserve) {
+                            tokens -= 1;
+                            return throttled;
+                        }
+
+                        if (!throttled) {
+                            logger.debug("Квота {} исчерпана для приоритета {}, ожидание токена...", kind, priority);
+                        }
+                        throttled = true;
+                        long waitMillis = (long) Math.ceil(Math.max(reserve + 1 - tokens, 0) / refillPerMilli);
+                        changed.await(Math.max(waitMillis, 1), TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waiting[priority.ordinal()]--;
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void drain() {
+            lock.lock();
+            try {
+                refill();
+                tokens = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double remaining() {
+            lock.lock();
+            try {
+                refill();
+                return tokens;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean higherPriorityWaiting(Priority priority) {
+            for (int i = 0; i < priority.ordinal(); i++) {
+                if (waiting[i] > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefillTime) * refillPerMilli);
+            lastRefillTime = now;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.absolute.bot.clients;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накапливает обновления диапазонов в течение короткого окна (или до N операций)
+ * и отправляет их одним запросом spreadsheets.values.batchUpdate.
+ * Каждый вызывающий получает свой CompletableFuture, который завершается после отправки пачки.
+ * Если Google отклонил пачку как некорректную (400), диапазоны отправляются по одному,
+ * чтобы ошибку получил только вызывающий с плохим диапазоном.
+ */
+class SheetsWriteBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SheetsWriteBatcher.class);
+
+    @FunctionalInterface
+    interface BatchSender {
+        void send(List<ValueRange> data) throws IOException;
+    }
+
+    private record PendingWrite(ValueRange range, CompletableFuture<Void> future) {
+    }
+
+    private final BatchSender sender;
+    private final long windowMillis;
+    private final int maxOps;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sheets-write-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<PendingWrite> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    SheetsWriteBatcher(BatchSender sender, long windowMillis, int maxOps) {
+        this.sender = sender;
+        this.windowMillis = windowMillis;
+        this.maxOps = Math.max(1, maxOps);
+    }
+
+    /**
+     * Ставит обновление в очередь. Future завершится после отправки пачки, в которую оно попало.
+     */
+    CompletableFuture<Void> submit(String range, ValueRange body) {
+        ValueRange data = new ValueRange()
+                .setRange(range)
+                .setValues(body.getValues());
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        synchronized (this) {
+            pending.add(new PendingWrite(data, future));
+            if (pending.size() >= maxOps) {
+                cancelScheduledFlush();
+                flusher.execute(this::flush);
+            } else if (scheduledFlush == null) {
+                scheduledFlush = flusher.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Отправляет все накопленные обновления и останавливает фоновый поток.
+     */
+    void shutdown() {
+        synchronized (this) {
+            cancelScheduledFlush();
+        }
+        flush();
+        flusher.shutdown();
+    }
+
+    private void flush() {
+        List<PendingWrite> batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        List<ValueRange> data = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            data.add(write.range());
+        }
+
+        try {
+            sender.send(data);
+            logger.debug("Отправлено {} обновлений одним batchUpdate.", batch.size());
+            batch.forEach(write -> write.future().complete(null));
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 400 || batch.size() == 1) {
+                fail(batch, e);
+                return;
+            }
+            logger.warn("Пачка из {} обновлений отклонена ({}). Отправляем диапазоны по одному.",
+                    batch.size(), e.getStatusCode());
+            batch.forEach(this::sendSingle);
+        } catch (Exception e) {
+            fail(batch, e);
+        }
+    }
+
+    private void sendSingle(PendingWrite write) {
+        try {
+            sender.send(List.of(write.range()));
+            write.future().complete(null);
+        } catch (Exception e) {
+            logger.error("Ошибка при отправке обновления диапазона {}", write.range().getRange(), e);
+            write.future().completeExceptionally(e);
+        }
+    }
+
+    private void fail(List<PendingWrite> batch, Exception e) {
+        logger.error("Ошибка при отправке пачки из {} обновлений", batch.size(), e);
+        batch.forEach(write -> write.future().completeExceptionally(e));
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
@@ -21,12 +21,7 @@ public abstract class BaseCommand {
     }
 
     protected List<String> getDropNames(String dropIds) {
-        Map<String, String> itemsMap = bossService.getItemsMap();
-        return Arrays.stream(dropIds.split(","))
-                .map(String::trim)
-                .map(itemsMap::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return bossService.getItemCatalog().getDropNames(dropIds);
     }
 
     protected String formatMembersByGroups(List<String> memberIds, Guild guild) {
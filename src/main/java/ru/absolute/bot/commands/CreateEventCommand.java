@@ -9,10 +9,10 @@ import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEve
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.StringSelectInteractionEvent;
 import net.dv8tion.jda.api.interactions.AutoCompleteQuery;
-import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.interactions.components.selections.SelectOption;
 import net.dv8tion.jda.api.interactions.components.selections.StringSelectMenu;
 import net.dv8tion.jda.api.utils.messages.MessageEditBuilder;
 import net.dv8tion.jda.api.utils.messages.MessageEditData;
@@ -103,11 +103,11 @@ public class CreateEventCommand extends BaseCommand {
     @SneakyThrows
     private void handleEvent(String bossName, ReplyHandler replyHandler) {
         Boss boss = bossService.findBossByName(bossName);
-        List<String> itemIds = Optional.ofNullable(boss)
-                .map(Boss::getItemList)
-                .orElse(Collections.emptyList());
+        List<SelectOption> dropOptions = boss != null
+                ? bossService.getItemCatalog().getDropOptions(boss)
+                : Collections.emptyList();
 
-        StringSelectMenu dropMenu = createDropSelectMenu(itemIds, bossName);
+        StringSelectMenu dropMenu = createDropSelectMenu(dropOptions, bossName);
         Button skipButton = Button.secondary(SKIP_DROPS_PREFIX + bossName, "Пропустить");
         Button confirmButton = Button.success(CONFIRM_DROPS_PREFIX + bossName, "Подтвердить");
 
@@ -115,39 +115,39 @@ public class CreateEventCommand extends BaseCommand {
                 dropMenu, skipButton, confirmButton);
     }
 
-    private StringSelectMenu createDropSelectMenu(List<String> itemIds, String bossName) {
-        Map<String, String> itemsMap = bossService.getItemsMap();
-
-        List<String> uniqueItemIds = itemIds.stream()
-                .distinct()
-                .collect(Collectors.toList());
-
-        logDropInfo(bossName, itemIds, uniqueItemIds);
+    /**
+     * Собирает меню из готовых вариантов каталога предметов: без повторов и не больше 25.
+     */
+    private StringSelectMenu createDropSelectMenu(List<SelectOption> dropOptions, String bossName) {
+        log.info("Дроп с босса {}: {} вариантов", bossName, dropOptions.size());
 
-        StringSelectMenu.Builder menuBuilder = StringSelectMenu.create(DROP_SELECTION_PREFIX + bossName)
+        return StringSelectMenu.create(DROP_SELECTION_PREFIX + bossName)
                 .setPlaceholder("Выберите дроп")
                 .setMinValues(1)
-                .setMaxValues(Math.min(25, uniqueItemIds.size()));
-
-        uniqueItemIds.forEach(itemId -> {
-            String itemName = itemsMap.get(itemId);
-            if (itemName != null) {
-                menuBuilder.addOption(itemName, itemId);
-            } else {
-                log.warn("Не найдено название для дропа с ID: {}", itemId);
-            }
-        });
-
-        return menuBuilder.build();
+                .setMaxValues(dropOptions.size())
+                .addOptions(dropOptions)
+                .build();
     }
 
     // Вспомогательные методы
     private void createAndConfirmEvent(ButtonInteractionEvent event, String bossName, String drops) {
         List<String> memberIds = getMembersFromVoiceChannel(event);
-        String eventId = eventService.createEvent(bossName, drops, memberIds);
+        Guild guild = Objects.requireNonNull(event.getGuild());
+
+        // Подтверждаем нажатие сразу, событие записывается в таблицу на виртуальном потоке
+        event.deferEdit().queue();
+        eventService.createEventAsync(bossName, drops, memberIds).whenComplete((eventId, error) -> {
+            if (error != null) {
+                log.error("Ошибка при создании события для босса {}", bossName, error);
+                event.getHook().editOriginal("Не удалось создать событие для босса " + bossName)
+                        .setComponents()
+                        .queue();
+                return;
+            }
 
-        MessageEditData message = buildEventMessage(eventId, bossName, drops, memberIds, Objects.requireNonNull(event.getGuild()));
-        event.editMessage(message).setComponents().queue();
+            MessageEditData message = buildEventMessage(eventId, bossName, drops, memberIds, guild);
+            event.getHook().editOriginal(message).setComponents().queue();
+        });
     }
 
     private MessageEditData buildEventMessage(String eventId, String bossName, String drops, List<String> memberIds, Guild guild) {
@@ -201,7 +201,7 @@ public class CreateEventCommand extends BaseCommand {
         AutoCompleteQuery option = event.getFocusedOption();
 
         if ("boss_name".equals(option.getName())) {
-            handleBossNameAutocomplete(event, option.getValue().toLowerCase());
+            handleBossNameAutocomplete(event, option.getValue());
         } else if ("drop".equals(option.getName())) {
             handleDropAutocomplete(event);
         }
@@ -209,12 +209,7 @@ public class CreateEventCommand extends BaseCommand {
 
     private void handleBossNameAutocomplete(CommandAutoCompleteInteractionEvent event, String userInput) {
         try {
-            List<Command.Choice> choices = bossService.findBossesByName(userInput).stream()
-                    .map(boss -> new Command.Choice(boss.getName(), boss.getName()))
-                    .limit(25)
-                    .collect(Collectors.toList());
-
-            event.replyChoices(choices).queue();
+            event.replyChoices(bossService.suggestBossNames(userInput)).queue();
         } catch (Exception e) {
             log.error("Ошибка автозаполнения boss_name", e);
             event.replyChoices().queue();
@@ -225,29 +220,14 @@ public class CreateEventCommand extends BaseCommand {
         Optional.ofNullable(event.getOption("boss_name"))
                 .map(OptionMapping::getAsString)
                 .map(bossService::findBossByName)
-                .map(Boss::getItemList)
+                .map(boss -> bossService.getItemCatalog().getDropChoices(boss))
                 .ifPresentOrElse(
-                        itemIds -> sendDropChoices(event, itemIds),
+                        choices -> event.replyChoices(choices).queue(),
                         () -> event.replyChoices().queue()
                 );
     }
 
-    private void sendDropChoices(CommandAutoCompleteInteractionEvent event, List<String> itemIds) {
-        Map<String, String> itemsMap = bossService.getItemsMap();
-        List<Command.Choice> choices = itemIds.stream()
-                .map(itemId -> new Command.Choice(itemsMap.get(itemId), itemId))
-                .limit(25)
-                .collect(Collectors.toList());
-
-        event.replyChoices(choices).queue();
-    }
-
     // Вспомогательные методы для логирования
-    private void logDropInfo(String bossName, List<String> itemIds, List<String> uniqueItemIds) {
-        log.info("Дроп с босса {}: {}", bossName, itemIds);
-        log.info("Уникальные дроп с босса {}: {}", bossName, uniqueItemIds);
-    }
-
     private void logSelection(String userId, String bossName, List<String> selectedDrops) {
         log.info("Пользователь {} выбрал дроп с босса {}: {}", userId, bossName, selectedDrops);
     }
@@ -196,32 +196,49 @@ public class EditEventCommand extends BaseCommand {
             List<String> originalMembers = dbEvent.getMembers();
             List<String> currentMembers = session.getCurrentMembers();
 
-            // Обновляем событие в базе данных
+            // Сохранение и запись в таблицу идут не на потоке JDA: подтверждаем нажатие сразу,
+            // а сообщение обновляем через hook, когда станет известен результат
+            event.deferEdit().queue();
             eventService.editEvent(
                     session.getEventId(),
                     null,
                     currentMembers.stream().filter(m -> !originalMembers.contains(m)).collect(Collectors.toList()),
                     originalMembers.stream().filter(m -> !currentMembers.contains(m)).collect(Collectors.toList())
-            );
-
-            // 1. Обновляем исходное сообщение (убираем кнопки)
-            String updatedList = formatMembersByGroups(currentMembers, event.getGuild());
-            event.editMessage("✅ Список участников обновлен!\n\n**Текущие участники:**\n" + updatedList)
-                    .setComponents() // Убираем все кнопки
-                    .queue();
+            ).whenComplete((written, error) -> {
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    event.getHook().sendMessage("Произошла ошибка при обновлении события: " + cause.getMessage())
+                            .setEphemeral(true)
+                            .queue();
+                    return;
+                }
+
+                // 1. Обновляем исходное сообщение (убираем кнопки)
+                String updatedList = formatMembersByGroups(currentMembers, event.getGuild());
+                event.getHook().editOriginal("✅ Список участников обновлен!\n\n**Текущие участники:**\n" + updatedList)
+                        .setComponents() // Убираем все кнопки
+                        .queue();
 
-            // 2. Отправляем публичное уведомление (если нужно)
-            String publicMessage = String.format(
-                    "Изменения в событии \"%s, %s [%s]\", сделанные пользователем %s сохранены.\n\nУчастники:\n%s",
-                    dbEvent.getBossName(),
-                    dbEvent.getDate(),
-                    dbEvent.getId(),
-                    event.getUser().getAsMention(),
-                    updatedList
-            );
-            event.getChannel().sendMessage(publicMessage).queue();
-
-            editingSessions.remove(userId);
+                // 2. Отправляем публичное уведомление (если нужно)
+                String publicMessage = String.format(
+                        "Изменения в событии \"%s, %s [%s]\", сделанные пользователем %s сохранены.\n\nУчастники:\n%s",
+                        dbEvent.getBossName(),
+                        dbEvent.getDate(),
+                        dbEvent.getId(),
+                        event.getUser().getAsMention(),
+                        updatedList
+                );
+                event.getChannel().sendMessage(publicMessage).queue();
+
+                if (!written) {
+                    // Изменения уже в журнале, но пользователь должен знать, что таблица пока не обновлена
+                    event.getHook().sendMessage("⚠️ Изменения сохранены, но запись в таблицу не удалась. "
+                                    + "Бот повторит попытку автоматически.")
+                            .setEphemeral(true)
+                            .queue();
+                }
+                editingSessions.remove(userId);
+            });
         } catch (Exception e) {
             event.reply("Произошла ошибка при обновлении события: " + e.getMessage())
                     .setEphemeral(true)
@@ -273,8 +290,8 @@ public class EditEventCommand extends BaseCommand {
 
     private void handleEventIdAutocomplete(CommandAutoCompleteInteractionEvent event) throws IOException {
         List<Command.Choice> options = eventService.getEventsByStatus(EventStatus.IN_PROGRESS)
+                .reversed() // Список отсортирован по дате, нужны сначала новые
                 .stream()
-                .sorted((e1, e2) -> e2.getDate().compareTo(e1.getDate())) // Сортировка по убыванию даты
                 .map(e -> new Command.Choice(e.getBossName() + " (" + e.getDate() + ")", e.getId()))
                 .limit(25)
                 .collect(Collectors.toList());
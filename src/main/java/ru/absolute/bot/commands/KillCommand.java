@@ -16,7 +16,7 @@ import ru.absolute.bot.utils.TimeUtils;
 import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class KillCommand {
@@ -39,23 +39,14 @@ public class KillCommand {
                         ? TimeUtils.parseKillTime(timeOption.getAsString())
                         : Instant.now();
 
-                bossService.updateKillTime(bossName, killTime);
-
-                Button okButton = Button.success("ok_" + bossName, "ОК");
-                Button createEventButton = Button.primary("create_event_" + bossName, "Создать событие");
-
-                // Форматируем сообщение с выделенным именем босса и красивым временем
-                String message = String.format("Босс '%s' убит", bossName);
-
-                MessageEditData editedMessage = new MessageEditBuilder()
-                        .setContent(message)
-                        .setActionRow(okButton, createEventButton)
-                        .build();
-
-                hook.editOriginal(editedMessage).queue(
-                        success -> log.info("Успешно обработано убийство босса {}", bossName),
-                        error -> log.error("Ошибка при отправке ответа", error)
-                );
+                // Запись в таблицу идет на виртуальном потоке, поток JDA не ждет ответа Google
+                bossService.updateKillTimeAsync(bossName, killTime).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        handleUpdateError(hook, error);
+                    } else {
+                        replyKilled(hook, bossName);
+                    }
+                });
             } catch (IllegalArgumentException e) {
                 editHookWithError(hook, e.getMessage());
             } catch (Exception e) {
@@ -68,20 +59,43 @@ public class KillCommand {
         });
     }
 
+    private void replyKilled(InteractionHook hook, String bossName) {
+        Button okButton = Button.success("ok_" + bossName, "ОК");
+        Button createEventButton = Button.primary("create_event_" + bossName, "Создать событие");
+
+        // Форматируем сообщение с выделенным именем босса и красивым временем
+        String message = String.format("Босс '%s' убит", bossName);
+
+        MessageEditData editedMessage = new MessageEditBuilder()
+                .setContent(message)
+                .setActionRow(okButton, createEventButton)
+                .build();
+
+        hook.editOriginal(editedMessage).queue(
+                success -> log.info("Успешно обработано убийство босса {}", bossName),
+                error -> log.error("Ошибка при отправке ответа", error)
+        );
+    }
+
+    private void handleUpdateError(InteractionHook hook, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalArgumentException) {
+            editHookWithError(hook, cause.getMessage());
+        } else {
+            log.error("Ошибка при обновлении времени убийства босса", cause);
+            editHookWithError(hook, "Произошла ошибка при обновлении времени убийства босса.");
+        }
+    }
+
     /**
      * Обрабатывает автозаполнение для команды /kill.
      */
     public void handleAutocomplete(CommandAutoCompleteInteractionEvent event) {
         AutoCompleteQuery option = event.getFocusedOption();
         if (option.getName().equals("boss_name")) {
-            String userInput = option.getValue().toLowerCase();
             try {
-                List<Command.Choice> choices = bossService.findBossesByName(userInput).stream()
-                        .map(boss -> new Command.Choice(
-                                String.format("%s [%d], %s", boss.getName(), boss.getLevel(), boss.getLocation()),
-                                boss.getName()))
-                        .limit(25)
-                        .collect(Collectors.toList());
+                // Готовые варианты из поискового индекса кеша, с учетом раскладки и опечаток
+                List<Command.Choice> choices = bossService.suggestBosses(option.getValue());
                 event.replyChoices(choices).queue(
                         null,
                         error -> log.error("Ошибка при отправке автозаполнения", error)
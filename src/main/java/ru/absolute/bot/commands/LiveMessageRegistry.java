@@ -0,0 +1,159 @@
+package ru.absolute.bot.commands;
+
+import net.dv8tion.jda.api.entities.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сообщения с расписанием, которые обновляются общим таймером ShowCommand.
+ * В одном канале живет не больше maxPerChannel сообщений: при добавлении лишнего
+ * самое старое снимается с обновления и возвращается вызывающему (сообщение не удаляется).
+ * Для каждого сообщения хранится последнее отправленное содержимое целиком (меньше 2 КБ),
+ * чтобы не отправлять правку, которая ничего не меняет: сравнение по хешу при коллизии
+ * оставило бы устаревшую таблицу.
+ * Удаленные сообщения и каналы снимаются по событиям шлюза, без запросов к API.
+ */
+class LiveMessageRegistry {
+    private final int maxPerChannel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, Deque<Message>> byChannel = new HashMap<>(); // В порядке добавления
+    // null - содержимое неизвестно (правка не дошла), следующая отрисовка отправит его заново
+    private final Map<Long, String> contents = new HashMap<>();
+    // Снимок для рассылки: таймер не берет блокировку на время обхода
+    private volatile List<Message> messages = List.of();
+
+    LiveMessageRegistry(int maxPerChannel) {
+        this.maxPerChannel = Math.max(1, maxPerChannel);
+    }
+
+    /**
+     * Добавляет сообщение с уже отправленным содержимым и возвращает сообщения,
+     * вытесненные из-за ограничения на канал.
+     */
+    List<Message> register(Message message, String content) {
+        lock.lock();
+        try {
+            Deque<Message> channelMessages = byChannel.computeIfAbsent(message.getChannel().getIdLong(),
+                    ignored -> new ArrayDeque<>());
+            channelMessages.addLast(message);
+            contents.put(message.getIdLong(), content);
+            List<Message> evicted = new ArrayList<>();
+            while (channelMessages.size() > maxPerChannel) {
+                Message oldest = channelMessages.removeFirst();
+                contents.remove(oldest.getIdLong());
+                evicted.add(oldest);
+            }
+            publish();
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Снимает сообщение с обновления. Возвращает false, если его не было.
+     */
+    boolean unregister(long messageId) {
+        lock.lock();
+        try {
+            boolean removed = false;
+            for (Deque<Message> channelMessages : byChannel.values()) {
+                removed |= channelMessages.removeIf(message -> message.getIdLong() == messageId);
+            }
+            if (removed) {
+                contents.remove(messageId);
+                byChannel.values().removeIf(Deque::isEmpty);
+                publish();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Снимает с обновления все сообщения канала. Возвращает количество снятых.
+     */
+    int unregisterChannel(long channelId) {
+        lock.lock();
+        try {
+            Deque<Message> channelMessages = byChannel.remove(channelId);
+            if (channelMessages == null) {
+                return 0;
+            }
+            channelMessages.forEach(message -> contents.remove(message.getIdLong()));
+            publish();
+            return channelMessages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Забывает отправленное содержимое, чтобы следующая отрисовка отправила правку повторно.
+     */
+    void invalidate(long messageId) {
+        lock.lock();
+        try {
+            contents.replace(messageId, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Запоминает новое содержимое сообщения. Возвращает true, если оно отличается от отправленного
+     * ранее и правку нужно отправить; false, если содержимое то же или сообщение уже снято с обновления.
+     */
+    boolean markRendered(long messageId, String content) {
+        lock.lock();
+        try {
+            if (!contents.containsKey(messageId)) {
+                return false;
+            }
+            if (content.equals(contents.get(messageId))) {
+                return false;
+            }
+            contents.put(messageId, content);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasChannel(long channelId) {
+        lock.lock();
+        try {
+            return byChannel.containsKey(channelId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<Message> messages() {
+        return messages;
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            byChannel.clear();
+            contents.clear();
+            publish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish() {
+        List<Message> all = new ArrayList<>();
+        byChannel.values().forEach(all::addAll);
+        messages = List.copyOf(all);
+    }
+}
@@ -4,40 +4,67 @@ import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
-import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
-import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
-import net.dv8tion.jda.api.utils.messages.MessageEditBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import ru.absolute.bot.models.Boss;
 import ru.absolute.bot.services.BossService;
 import ru.absolute.bot.services.NotificationService;
+import ru.absolute.bot.services.RespawnScheduler;
+import ru.absolute.bot.utils.ConfigLoader;
 import ru.absolute.bot.utils.TimeUtils;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 
 @Slf4j
 public class ShowCommand {
+    // Такт обновления планируется на момент, когда таблица изменится, но не чаще нижней границы
+    // (правки не идут пачками при частых убийствах) и не реже верхней (страховка от расхождений)
+    private static final Duration MIN_RENDER_DELAY = Duration.ofSeconds(
+            ConfigLoader.getLongProperty("SHOW_MIN_REFRESH_SECONDS", 5));
+    private static final Duration MAX_RENDER_DELAY = Duration.ofSeconds(
+            ConfigLoader.getLongProperty("SHOW_MAX_REFRESH_SECONDS", 900));
+    private static final Duration RENDER_RETRY_DELAY = Duration.ofSeconds(60);
+    // Показанное значение меняется сразу после расчетного момента, поэтому такт чуть позже него
+    private static final Duration VISIBLE_CHANGE_MARGIN = Duration.ofSeconds(1);
+    private static final String STALE_NOTICE =
+            "⏸ Эта таблица больше не обновляется. Актуальное расписание - в более новом сообщении или по команде /show.";
+    // Ошибки правки, после которых сообщение уже не вернется
+    private static final Set<ErrorResponse> GONE_ERRORS = EnumSet.of(
+            ErrorResponse.UNKNOWN_MESSAGE, ErrorResponse.UNKNOWN_CHANNEL, ErrorResponse.MISSING_ACCESS);
+
     private final BossService bossService;
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final Map<Long, Message> activeMessages = new ConcurrentHashMap<>();
-    private final Map<Long, Set<Long>> notifiedBosses = new ConcurrentHashMap<>();
+    private final LiveMessageRegistry liveMessages = new LiveMessageRegistry(
+            (int) ConfigLoader.getLongProperty("SHOW_MAX_MESSAGES_PER_CHANNEL", 2));
     private final NotificationService notificationService;
+    private final RespawnScheduler respawnScheduler;
+    // Таблица перестраивается, только если опубликован новый снимок боссов, подошло время,
+    // когда у кого-то из боссов сменится показанное время, или прошлая правка не дошла
+    private final AtomicBoolean renderRequested = new AtomicBoolean(true);
+    private volatile LocalDateTime nextVisibleChange = LocalDateTime.MIN;
+    private final ReentrantLock renderLock = new ReentrantLock();
+    private ScheduledFuture<?> nextRender;
+    private LocalDateTime nextRenderAt = LocalDateTime.MAX;
     private final long scheduleChannelId;
 
     public void handle(SlashCommandInteractionEvent event) {
         try {
-            MessageCreateBuilder messageBuilder = createBossStatusMessage();
-            event.reply(messageBuilder.build()).queue(interactionHook -> {
-                interactionHook.retrieveOriginal().queue(message -> {
-                    activeMessages.put(message.getIdLong(), message);
-                    scheduler.scheduleAtFixedRate(() -> updateMessage(message), 1, 1, TimeUnit.MINUTES);
-                });
+            MessageCreateData messageData = createBossStatusMessage().build();
+            event.reply(messageData).queue(interactionHook -> {
+                interactionHook.retrieveOriginal().queue(message ->
+                        registerLiveMessage(message, messageData.getContent()));
             });
         } catch (Exception e) {
             log.error("Ошибка при обработке команды /show", e);
@@ -49,6 +76,14 @@ public class ShowCommand {
         this.bossService = bossService;
         this.notificationService = new NotificationService(bossService);
         this.scheduleChannelId = notificationService.getScheduleChannelId();
+        // Оповещения о респе приходят по таймерам в момент начала окна, а не при обновлении сообщений
+        this.respawnScheduler = new RespawnScheduler(bossService,
+                boss -> notificationService.sendRespawnAlert(jda, boss));
+        bossService.addSnapshotListener(bosses -> {
+            renderRequested.set(true);
+            scheduleRender(Duration.ZERO);
+        });
+        scheduleRender(MAX_RENDER_DELAY);
         initializeSchedulePosting(jda);
 
 
@@ -127,44 +162,157 @@ public class ShowCommand {
     }
 
 
-    private void updateMessage(Message message) {
+    /**
+     * Ставит сообщение на общее обновление. Сообщения, вытесненные ограничением на канал,
+     * снимаются с обновления и помечаются устаревшими; удалять их нельзя - это могут быть
+     * ответы на /show других участников.
+     */
+    private void registerLiveMessage(Message message, String content) {
+        scheduleRender(Duration.ZERO); // Пересчитать момент следующего изменения таблицы
+        for (Message evicted : liveMessages.register(message, content)) {
+            log.info("[ShowCommand] В канале {} слишком много таблиц. Старая (ID: {}) больше не обновляется",
+                    evicted.getChannel().getId(), evicted.getId());
+            evicted.editMessage(STALE_NOTICE).queue(
+                    null,
+                    error -> log.warn("[ShowCommand] Не удалось пометить сообщение {} устаревшим: {}",
+                            evicted.getId(), error.getMessage())
+            );
+        }
+    }
+
+    /**
+     * Планирует такт обновления через delay, ограниченный нижней и верхней границей.
+     * Уже запланированный более ранний такт не откладывается.
+     */
+    private void scheduleRender(Duration delay) {
+        Duration clamped = delay.compareTo(MIN_RENDER_DELAY) < 0 ? MIN_RENDER_DELAY
+                : delay.compareTo(MAX_RENDER_DELAY) > 0 ? MAX_RENDER_DELAY : delay;
+        LocalDateTime renderAt = LocalDateTime.now().plus(clamped);
+        renderLock.lock();
         try {
-            cleanUpMessages(); // Очистка перед обновлением
-            MessageCreateBuilder newMessage = createBossStatusMessage();
-            MessageEditBuilder editBuilder = new MessageEditBuilder();
-            editBuilder.applyCreateData(newMessage.build());
-            message.editMessage(editBuilder.build()).queue();
-        } catch (Exception e) {
-            log.error("Ошибка при обновлении сообщения", e);
+            if (nextRender != null && !nextRenderAt.isAfter(renderAt)) {
+                return;
+            }
+            if (nextRender != null) {
+                nextRender.cancel(false);
+            }
+            nextRender = scheduler.schedule(this::renderTick, clamped.toMillis(), TimeUnit.MILLISECONDS);
+            nextRenderAt = renderAt;
+        } catch (RejectedExecutionException e) {
+            log.debug("[ShowCommand] Планировщик остановлен, такт обновления не запланирован");
+        } finally {
+            renderLock.unlock();
         }
     }
 
-    private void cleanUpMessages() {
-        activeMessages.entrySet().removeIf(entry -> {
-            try {
-                Message message = entry.getValue();
-                if (message == null || !message.isFromGuild()) {
-                    return true; // Удалить если сообщение null или не из гильдии
-                }
+    /**
+     * Общий такт обновления: таблица строится один раз и рассылается всем живым сообщениям.
+     * Следующий такт планируется на ближайший момент, когда у кого-то из боссов сменится
+     * показанное время или группа, поэтому вдали от окон респа бот почти не просыпается.
+     * Если с прошлого такта не изменились ни боссы, ни показанное время, такт ничего не делает;
+     * правка отправляется только сообщениям, у которых содержимое действительно другое.
+     * Удаленные сообщения снимаются с обновления по событиям шлюза, поэтому такт не проверяет
+     * их существование запросами к API.
+     */
+    private void renderTick() {
+        renderLock.lock();
+        try {
+            nextRender = null;
+            nextRenderAt = LocalDateTime.MAX;
+        } finally {
+            renderLock.unlock();
+        }
 
-                // Получаем канал как GuildMessageChannel
-                MessageChannel channel = message.getChannel();
-                if (!(channel instanceof GuildMessageChannel guildChannel)) {
-                    return true; // Удалить если не текстовый/новостной канал гильдии
-                }
+        Duration nextDelay = RENDER_RETRY_DELAY;
+        try {
+            List<Message> messages = liveMessages.messages();
+            if (messages.isEmpty()) {
+                nextDelay = MAX_RENDER_DELAY; // Новое сообщение само запланирует такт
+                return;
+            }
 
-                // Проверяем доступность сообщения
-                guildChannel.retrieveMessageById(message.getIdLong()).complete();
-                return false; // Не удалять если сообщение доступно
+            LocalDateTime now = LocalDateTime.now();
+            boolean changed = renderRequested.getAndSet(false);
+            if (!changed && !now.isAfter(nextVisibleChange)) {
+                nextDelay = untilVisibleChange(now);
+                return;
+            }
 
-            } catch (Exception e) {
-                return true; // Удалить при любой ошибке
+            List<Boss> bosses = bossService.getAllBosses();
+            nextVisibleChange = bosses.stream()
+                    .map(boss -> TimeUtils.nextVisibleChange(boss, now))
+                    .filter(Objects::nonNull)
+                    .min(Comparator.naturalOrder())
+                    .orElse(LocalDateTime.MAX);
+            nextDelay = untilVisibleChange(now);
+            MessageCreateData rendered = createBossStatusMessage(bosses).build();
+            String text = rendered.getContent();
+            MessageEditData content = MessageEditData.fromCreateData(rendered);
+            for (Message message : messages) {
+                if (!liveMessages.markRendered(message.getIdLong(), text)) {
+                    continue; // Содержимое не изменилось
+                }
+                message.editMessage(content).queue(
+                        null,
+                        error -> handleEditFailure(message, error)
+                );
             }
-        });
+        } catch (Exception e) {
+            log.error("Ошибка при обновлении сообщений", e);
+        } finally {
+            scheduleRender(nextDelay);
+        }
+    }
+
+    private Duration untilVisibleChange(LocalDateTime now) {
+        if (nextVisibleChange.equals(LocalDateTime.MAX)) {
+            return MAX_RENDER_DELAY;
+        }
+        return Duration.between(now, nextVisibleChange).plus(VISIBLE_CHANGE_MARGIN);
+    }
+
+    /**
+     * Сообщения или канала больше нет либо к нему нет доступа - снимаем с обновления.
+     * Прочие ошибки считаем временными: правка повторится на следующем такте.
+     */
+    private void handleEditFailure(Message message, Throwable error) {
+        if (error instanceof ErrorResponseException response && GONE_ERRORS.contains(response.getErrorResponse())) {
+            log.info("[ShowCommand] Сообщение {} недоступно ({}). Снимаем с обновления.",
+                    message.getId(), response.getErrorResponse());
+            liveMessages.unregister(message.getIdLong());
+            return;
+        }
+        log.warn("[ShowCommand] Не удалось обновить сообщение {}: {}. Повторим на следующем такте.",
+                message.getId(), error.getMessage());
+        liveMessages.invalidate(message.getIdLong());
+        renderRequested.set(true);
+        scheduleRender(RENDER_RETRY_DELAY);
+    }
+
+    /**
+     * Сообщение удалено в Discord (вызывается обработчиком событий удаления).
+     */
+    public void onMessageDeleted(long messageId) {
+        if (liveMessages.unregister(messageId)) {
+            log.info("[ShowCommand] Сообщение {} удалено. Снимаем с обновления.", messageId);
+        }
+    }
+
+    /**
+     * Канал удален: все его сообщения снимаются с обновления.
+     */
+    public void onChannelDeleted(long channelId) {
+        int removed = liveMessages.unregisterChannel(channelId);
+        if (removed > 0) {
+            log.info("[ShowCommand] Канал {} удален. Снято с обновления сообщений: {}", channelId, removed);
+        }
     }
 
     private MessageCreateBuilder createBossStatusMessage() {
-        List<Boss> bosses = bossService.getAllBosses();
+        return createBossStatusMessage(bossService.getAllBosses());
+    }
+
+    private MessageCreateBuilder createBossStatusMessage(List<Boss> bosses) {
         List<Boss> filteredBosses = filterAndSortBosses(bosses);
 
         List<Boss> recentlyEnded = new ArrayList<>();
@@ -172,43 +320,10 @@ public class ShowCommand {
         List<Boss> upcoming = new ArrayList<>();
 
         categorizeBosses(filteredBosses, recentlyEnded, inRespawn, upcoming);
-        checkForRespawnStart(activeMessages.values(), filteredBosses);
 
         return buildMessage(recentlyEnded, inRespawn, upcoming);
     }
 
-    private void checkForRespawnStart(Collection<Message> messages, List<Boss> bosses) {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime checkWindowStart = now.minusMinutes(5);
-
-        for (Message message : messages) {
-            Set<Long> alreadyNotified = notifiedBosses.computeIfAbsent(message.getIdLong(), k -> new HashSet<>());
-            MessageChannel channel = message.getChannel();
-
-            for (Boss boss : bosses) {
-                LocalDateTime respawnStart = TimeUtils.calculateRespawnWindowStart(boss);
-
-                if (shouldNotify(respawnStart, checkWindowStart, now, alreadyNotified, (long) boss.getId())) {
-                    sendRespawnNotification(channel, boss);
-                    alreadyNotified.add((long) boss.getId());
-                }
-            }
-        }
-    }
-
-    private boolean shouldNotify(LocalDateTime respawnStart, LocalDateTime checkWindowStart,
-                                 LocalDateTime now, Set<Long> alreadyNotified, Long bossId) {
-        return respawnStart != null &&
-                respawnStart.isAfter(checkWindowStart) &&
-                respawnStart.isBefore(now) &&
-                !alreadyNotified.contains(bossId);
-    }
-
-    private void sendRespawnNotification(MessageChannel channel, Boss boss) {
-        notificationService.sendRespawnAlert(channel.getJDA(), boss);
-    }
-
-
     /**
      * Фильтрует и сортирует боссов.
      */
@@ -308,20 +423,18 @@ public class ShowCommand {
     }
 
     public void postSchedule(TextChannel channel) {
-        if (activeMessages.values().stream().anyMatch(msg ->
-                msg.getChannel().getIdLong() == channel.getIdLong())) {
+        if (liveMessages.hasChannel(channel.getIdLong())) {
             log.info("[ShowCommand] Активное сообщение уже существует в канале. Пропускаем публикацию.");
             return;
         }
         try {
             log.info("[ShowCommand] Создание сообщения с расписанием...");
-            MessageCreateBuilder messageBuilder = createBossStatusMessage();
+            MessageCreateData messageData = createBossStatusMessage().build();
 
-            channel.sendMessage(messageBuilder.build()).queue(
+            channel.sendMessage(messageData).queue(
                     message -> {
                         log.info("[ShowCommand] Расписание опубликовано (ID: {})", message.getId());
-                        activeMessages.put(message.getIdLong(), message);
-                        scheduler.scheduleAtFixedRate(() -> updateMessage(message), 1, 1, TimeUnit.MINUTES);
+                        registerLiveMessage(message, messageData.getContent());
                     },
                     error -> {
                         log.error("[ShowCommand] Ошибка публикации расписания: {}", error.getMessage());
@@ -336,6 +449,7 @@ public class ShowCommand {
 
     public void shutdown() {
         log.info("Завершение работы ShowCommand...");
+        respawnScheduler.shutdown();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -348,7 +462,6 @@ public class ShowCommand {
             scheduler.shutdownNow();
             Thread.currentThread().interrupt();
         }
-        activeMessages.clear();
-        notifiedBosses.clear();
+        liveMessages.clear();
     }
 }
\ No newline at end of file
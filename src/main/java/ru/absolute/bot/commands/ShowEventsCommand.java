@@ -48,12 +48,9 @@ public class ShowEventsCommand {
             }
         }
 
-        // Получаем события по статусу
+        // Получаем события по статусу (из памяти, уже отсортированы по дате)
         List<Event> events = eventService.getEventsByStatus(status);
 
-        // Сортируем по дате
-        events.sort(Comparator.comparing(Event::getDate));
-
         // Если событий нет, сообщаем об этом
         if (events.isEmpty()) {
             event.reply("Событий со статусом **" + status + "** не найдено.").setEphemeral(true).queue();
@@ -67,8 +64,8 @@ public class ShowEventsCommand {
 
         // Добавляем каждое событие в embed
         for (Event ev : events) {
-            // Получаем названия дропов
-            List<String> dropNames = getDropNames(ev.getDrop(), bossService);
+            // Названия дропов из каталога предметов кеша
+            List<String> dropNames = bossService.getItemCatalog().getDropNames(ev.getDrop());
 
             // Форматируем дропы в блоки
             String formattedDrops = formatDropsIntoBlocks(dropNames, 5); // 5 дропов в блоке
@@ -105,27 +102,6 @@ public class ShowEventsCommand {
         event.replyEmbeds(embed.build()).queue();
     }
 
-    /**
-     * Получает названия дропов по их ID.
-     */
-    private List<String> getDropNames(String dropIds, BossService bossService) {
-        Map<String, String> itemsMap = bossService.getItemsMap(); // Используем кэш предметов
-        List<String> dropNames = new ArrayList<>();
-
-        // Предположим, что dropIds — это строка вида "393,394,415,416,1938,1939,316,317,2030,956"
-        String[] ids = dropIds.split(",");
-        for (String id : ids) {
-            String itemName = itemsMap.get(id.trim());
-            if (itemName != null) {
-                dropNames.add(itemName);
-            } else {
-                log.warn("Не найдено название для дропа с ID: {}", id);
-            }
-        }
-
-        return dropNames;
-    }
-
     /**
      * Форматирует дропы в блоки.
      *
@@ -2,60 +2,153 @@ package ru.absolute.bot.dao;
 import com.google.api.services.sheets.v4.model.ValueRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.absolute.bot.clients.GoogleSheetsClient;
+import ru.absolute.bot.clients.SheetsBackend;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
 import ru.absolute.bot.models.Boss;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class BossDao {
+    public static final String CHECKERS_RANGE = SheetsBackend.CHECKERS_SHEET + "!A2:B";
+
     private static final Logger logger = LoggerFactory.getLogger(BossDao.class);
-    private final GoogleSheetsClient sheetsClient;
+    private final SheetsBackend sheetsClient;
     private final String sheetName;
 
-    public BossDao(GoogleSheetsClient sheetsClient, String sheetName) {
+    // Номер строки в таблице по ID босса, заполняется при каждом чтении листа
+    private volatile Map<Integer, Integer> rowIndexById = Map.of();
+    // Строки, которые не удалось разобрать при последнем полном чтении
+    private volatile Set<Integer> unparsedRows = Set.of();
+
+    public BossDao(SheetsBackend sheetsClient, String sheetName) {
         this.sheetsClient = sheetsClient;
         this.sheetName = sheetName;
     }
 
+    public String getSheetName() {
+        return sheetName;
+    }
+
     public List<Boss> getAllBosses() throws IOException {
         logger.info("Получение списка боссов из таблицы...");
-        ValueRange response = sheetsClient.getValues(sheetName);
+        return parseBosses(sheetsClient.getValues(sheetName));
+    }
 
+    public CompletableFuture<List<Boss>> getAllBossesAsync() {
+        return sheetsClient.supplyAsync(this::getAllBosses);
+    }
+
+    /**
+     * Разбирает содержимое листа боссов, полученное отдельным или пакетным запросом.
+     */
+    public List<Boss> parseBosses(ValueRange response) {
         List<Boss> bosses = new ArrayList<>();
+        if (response == null || response.getValues() == null) {
+            logger.error("Лист боссов пуст или данные не найдены.");
+            return bosses;
+        }
+
+        Map<Integer, Integer> rowIndex = new HashMap<>();
+        Set<Integer> unparsed = new HashSet<>();
         for (int i = 1; i < response.getValues().size(); i++) { // Пропустить заголовок
             List<Object> row = response.getValues().get(i);
             Boss boss = createBossFromRow(row);
             if (boss != null) {
                 bosses.add(boss);
+                // Индекс строки в Google Sheets начинается с 1. При повторе ID пишем в первую строку,
+                // как и BossSnapshot, который показывает первого босса
+                rowIndex.putIfAbsent(boss.getId(), i + 1);
+            } else {
+                unparsed.add(i + 1);
             }
         }
+        this.rowIndexById = rowIndex;
+        this.unparsedRows = unparsed;
 
         logger.info("Успешно получено {} боссов.", bosses.size());
         return bosses;
     }
 
-    public void updateBoss(Boss boss) throws IOException {
-        ValueRange response = sheetsClient.getValues(sheetName);
-        int rowIndex = -1;
+    /**
+     * Перечитывает время убийства у уже загруженных боссов, читая только столбцы A (ID) и D (время убийства).
+     * Возвращает новый список, где заменены только боссы с изменившимся временем,
+     * или null, если строки листа добавлены, удалены или переставлены -
+     * тогда нужна полная перезагрузка листа.
+     */
+    public List<Boss> refreshKillTimes(List<Boss> bosses) throws IOException {
+        List<ValueRange> ranges = sheetsClient.batchGetValues(List.of(sheetName + "!A2:A", sheetName + "!D2:D"));
+        List<List<Object>> ids = ranges.get(0).getValues() != null ? ranges.get(0).getValues() : List.of();
+        List<List<Object>> killTimes = ranges.get(1).getValues() != null ? ranges.get(1).getValues() : List.of();
+
+        Map<Integer, Integer> positionById = new HashMap<>();
+        for (int i = 0; i < bosses.size(); i++) {
+            positionById.putIfAbsent(bosses.get(i).getId(), i);
+        }
+        Map<Integer, Integer> rowIndex = rowIndexById;
+        Set<Integer> skippedRows = unparsedRows;
+
+        List<Boss> refreshed = new ArrayList<>(bosses);
+        int matched = 0;
+        int changed = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            int sheetRow = i + 2; // Данные начинаются со второй строки
+            List<Object> idCell = ids.get(i);
+            if (idCell.isEmpty() || skippedRows.contains(sheetRow)) {
+                continue;
+            }
 
-        // Ищем строку с ID босса
-        for (int i = 1; i < response.getValues().size(); i++) {
-            List<Object> row = response.getValues().get(i);
-            if (row.get(0).toString().equals(String.valueOf(boss.getId()))) {
-                rowIndex = i + 1; // Индекс строки в Google Sheets начинается с 1
-                break;
+            Integer position;
+            try {
+                position = positionById.get(Integer.parseInt(idCell.get(0).toString()));
+            } catch (NumberFormatException e) {
+                position = null;
+            }
+            Boss boss = position != null ? bosses.get(position) : null;
+            if (boss == null || !Objects.equals(rowIndex.get(boss.getId()), sheetRow)) {
+                logger.info("Строки листа боссов изменились (строка {}). Нужна полная перезагрузка.", sheetRow);
+                return null;
+            }
+            matched++;
+
+            List<Object> killTimeCell = i < killTimes.size() ? killTimes.get(i) : List.of();
+            try {
+                LocalDateTime killTime = parseKillTime(killTimeCell.isEmpty() ? "" : killTimeCell.get(0).toString());
+                if (!Objects.equals(killTime, boss.getKillTime())) {
+                    refreshed.set(position, boss.withKillTime(killTime));
+                    changed++;
+                }
+            } catch (DateTimeParseException e) {
+                logger.error("Некорректное время убийства босса {}: {}", boss.getId(), e.getMessage());
             }
         }
 
-        if (rowIndex == -1) {
-            throw new IllegalArgumentException("Босс с ID " + boss.getId() + " не найден в таблице.");
+        if (matched != positionById.size()) {
+            logger.info("Часть боссов пропала из листа. Нужна полная перезагрузка.");
+            return null;
         }
+        logger.info("Время убийства обновлено по столбцам A и D: изменено {} из {} боссов.", changed, matched);
+        return changed == 0 ? bosses : refreshed;
+    }
+
+    public CompletableFuture<List<Boss>> refreshKillTimesAsync(List<Boss> bosses) {
+        return sheetsClient.supplyAsync(() -> refreshKillTimes(bosses));
+    }
+
+    public void updateBoss(Boss boss) throws IOException {
+        int rowIndex = findRowIndex(boss.getId());
 
         // Формируем тело запроса для обновления строки
         ValueRange body = new ValueRange()
@@ -72,14 +165,43 @@ public class BossDao {
         sheetsClient.updateValues(sheetName + "!A" + rowIndex, body);
     }
 
+    public CompletableFuture<Void> updateBossAsync(Boss boss) {
+        return sheetsClient.supplyAsync(() -> {
+            updateBoss(boss);
+            return null;
+        });
+    }
+
+    /**
+     * Возвращает номер строки босса. Сначала проверяет строку из индекса чтением одной ячейки,
+     * и только если она не совпала (строки переставили), перечитывает весь лист.
+     */
+    private int findRowIndex(int bossId) throws IOException {
+        String id = String.valueOf(bossId);
+        Integer cachedRow = rowIndexById.get(bossId);
+        if (cachedRow != null) {
+            ValueRange cell = sheetsClient.getValues(sheetName + "!A" + cachedRow, Priority.HIGH);
+            if (cell.getValues() != null && !cell.getValues().isEmpty() && !cell.getValues().get(0).isEmpty()
+                    && cell.getValues().get(0).get(0).toString().equals(id)) {
+                return cachedRow;
+            }
+            logger.warn("Строка {} больше не принадлежит боссу {}. Перестраиваем индекс...", cachedRow, bossId);
+        }
+
+        getAllBosses(); // Перестраивает индекс строк
+        Integer row = rowIndexById.get(bossId);
+        if (row == null) {
+            throw new IllegalArgumentException("Босс с ID " + bossId + " не найден в таблице.");
+        }
+        return row;
+    }
+
     private Boss createBossFromRow(List<Object> row) {
         try {
             int id = Integer.parseInt(row.get(0).toString());
             String name = row.get(1).toString();
             int level = row.size() > 2 ? Integer.parseInt(row.get(2).toString()) : 0;
-            LocalDateTime killTime = row.size() > 3 && !row.get(3).toString().isEmpty()
-                    ? LocalDateTime.parse(row.get(3).toString().trim(), DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-                    : null;
+            LocalDateTime killTime = row.size() > 3 ? parseKillTime(row.get(3).toString()) : null;
             List<String> itemList = row.size() > 4
                     ? Arrays.asList(row.get(4).toString().replace("[", "").replace("]", "").split(","))
                     : Collections.emptyList();
@@ -93,25 +215,39 @@ public class BossDao {
         }
     }
 
-    public String findCheckerLoginById(int id) throws IOException {
-        String range = "checkers!A2:B";
-        ValueRange response = sheetsClient.getValues(range);
+    private LocalDateTime parseKillTime(String value) {
+        return value.isEmpty() ? null : LocalDateTime.parse(value.trim(), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    /**
+     * Загружает всех палилок (ID -> логин) одним чтением.
+     */
+    public Map<Integer, String> getAllCheckers() throws IOException {
+        return parseCheckers(sheetsClient.getValues(CHECKERS_RANGE));
+    }
+
+    public CompletableFuture<Map<Integer, String>> getAllCheckersAsync() {
+        return sheetsClient.supplyAsync(this::getAllCheckers);
+    }
+
+    /**
+     * Разбирает диапазон палилок, полученный отдельным или пакетным запросом.
+     */
+    public Map<Integer, String> parseCheckers(ValueRange response) {
+        Map<Integer, String> checkers = new HashMap<>();
+        if (response == null || response.getValues() == null) {
+            return checkers;
+        }
 
         for (List<Object> row : response.getValues()) {
             if (row.size() >= 2) {
                 try {
-                    int currentId = Integer.parseInt(row.get(0).toString());
-                    if (currentId == id) {
-                        return row.get(1).toString();
-                    }
+                    checkers.put(Integer.parseInt(row.get(0).toString()), row.get(1).toString());
                 } catch (NumberFormatException e) {
-                    logger.error("Ошибка при поиске палалки из строки {}: {}", row, e.getMessage());
-                    return null;
+                    logger.error("Ошибка при загрузке палалки из строки {}: {}", row, e.getMessage());
                 }
             }
         }
-        return null;
+        return checkers;
     }
-
-
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package ru.absolute.bot.dao;
 
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
 import com.google.api.services.sheets.v4.model.ValueRange;
-import ru.absolute.bot.clients.GoogleSheetsClient;
+import ru.absolute.bot.clients.SheetsBackend;
+import ru.absolute.bot.clients.SheetsQuotaGovernor.Priority;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,40 +16,220 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class EventDao {
     private static final Logger logger = LoggerFactory.getLogger(EventDao.class);
-    private final GoogleSheetsClient sheetsClient;
+    private static final Pattern RANGE_START_ROW = Pattern.compile("![A-Z]+(\\d+)");
+    private final SheetsBackend sheetsClient;
     private final String sheetName;
 
-    public EventDao(GoogleSheetsClient sheetsClient, String sheetName) {
+    // Инкрементальное чтение листа: повторные вызовы дочитывают только новые строки
+    private static final long TAIL_READ_INTERVAL = 5 * 1000; // 5 секунд
+    private static final long CHECKSUM_INTERVAL = 5 * 60 * 1000; // 5 минут
+
+    // Состояние инкрементального чтения. ReentrantLock вместо synchronized, чтобы чтение
+    // на виртуальном потоке не занимало поток-носитель на время запроса к таблице
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final List<Event> rowEvents = new ArrayList<>(); // Событие по каждой строке данных (null, если строка не разобрана)
+    private final List<String> rowKeys = new ArrayList<>(); // Содержимое столбцов A:G строки на момент разбора
+    private int lastIngestedRow = 0; // 0 - лист еще не читался
+    private long lastTailReadTime = 0;
+    private long lastChecksumTime = 0;
+
+    // Номер строки в таблице по ID события: заполняется при чтении листа и при добавлении событий
+    private volatile Map<String, Integer> rowIndexById = new ConcurrentHashMap<>();
+
+    public EventDao(SheetsBackend sheetsClient, String sheetName) {
         this.sheetsClient = sheetsClient;
         this.sheetName = sheetName;
     }
 
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * Возвращает все события. Первый вызов читает лист целиком, последующие дочитывают
+     * только строки после последней прочитанной. Раз в CHECKSUM_INTERVAL все разбираемые столбцы
+     * сверяются с разобранными строками, чтобы заметить правки старых событий.
+     */
     public List<Event> getAllEvents() throws IOException {
-        logger.info("Получение списка событий из таблицы...");
-        ValueRange response = sheetsClient.getValues(sheetName);
+        stateLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (lastIngestedRow == 0) {
+                logger.info("Получение списка событий из таблицы...");
+                return loadEvents(sheetsClient.getValues(sheetName));
+            }
+
+            if (now - lastChecksumTime > CHECKSUM_INTERVAL) {
+                verifyChecksums();
+            } else if (now - lastTailReadTime > TAIL_READ_INTERVAL) {
+                readTail();
+            }
+            return snapshotEvents();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    public CompletableFuture<List<Event>> getAllEventsAsync() {
+        return sheetsClient.supplyAsync(this::getAllEvents);
+    }
+
+    /**
+     * Разбирает содержимое листа событий, полученное отдельным или пакетным запросом,
+     * и начинает с него инкрементальное чтение.
+     */
+    public List<Event> loadEvents(ValueRange response) {
+        stateLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            rowEvents.clear();
+            rowKeys.clear();
+            rowIndexById = new ConcurrentHashMap<>();
+            lastIngestedRow = 1; // Заголовок
+            lastTailReadTime = now;
+            lastChecksumTime = now;
+
+            if (response == null || response.getValues() == null) {
+                logger.error("Таблица пуста или данные не найдены.");
+                return Collections.emptyList();
+            }
+
+            logger.info("Получено строк: {}", response.getValues().size());
+            List<List<Object>> values = response.getValues();
+            for (int i = 1; i < values.size(); i++) { // Пропустить заголовок
+                ingestRow(i + 1, values.get(i)); // Строки в Google Sheets нумеруются с 1
+            }
+            lastIngestedRow = Math.max(values.size(), 1);
+
+            List<Event> events = snapshotEvents();
+            logger.info("Успешно получено {} событий.", events.size());
+            return events;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Дочитывает строки, добавленные после последнего чтения.
+     */
+    private void readTail() throws IOException {
+        int firstRow = lastIngestedRow + 1;
+        // Фоновое чтение (список событий, автозаполнение) не должно вытеснять запись убийств
+        ValueRange response = sheetsClient.getValues(sheetName + "!A" + firstRow + ":G", Priority.LOW);
+        lastTailReadTime = System.currentTimeMillis();
+
+        if (response == null || response.getValues() == null || response.getValues().isEmpty()) {
+            return;
+        }
+
+        List<List<Object>> values = response.getValues();
+        for (int i = 0; i < values.size(); i++) {
+            ingestRow(firstRow + i, values.get(i));
+        }
+        lastIngestedRow += values.size();
+        logger.info("Дочитано {} новых строк событий.", values.size());
+    }
+
+    /**
+     * Сверяет с листом все разбираемые столбцы (A:G) построчно и заново разбирает строки,
+     * содержимое которых изменилось, вместе с новыми строками. Если строки были удалены,
+     * разбирает прочитанное целиком.
+     */
+    private void verifyChecksums() throws IOException {
+        List<List<Object>> values = valuesOf(sheetsClient.getValues(sheetName + "!A2:G", Priority.LOW));
+        if (values.size() < lastParsedRow()) {
+            logger.info("Строки событий были удалены. Разбираем лист заново...");
+            rowEvents.clear();
+            rowKeys.clear();
+            rowIndexById = new ConcurrentHashMap<>();
+        }
+
+        int changedRows = 0;
+        for (int dataIndex = 0; dataIndex < values.size(); dataIndex++) {
+            List<Object> row = values.get(dataIndex);
+            if (dataIndex >= rowKeys.size() || !rowKey(row).equals(rowKeys.get(dataIndex))) {
+                ingestRow(dataIndex + 2, row); // Строки в Google Sheets нумеруются с 1, первая - заголовок
+                changedRows++;
+            }
+        }
+        // После последней непустой строки событий нет: хвост списков больше не нужен
+        while (rowKeys.size() > values.size()) {
+            rowKeys.remove(rowKeys.size() - 1);
+            rowEvents.remove(rowEvents.size() - 1);
+        }
+        lastIngestedRow = values.size() + 1;
+
+        long now = System.currentTimeMillis();
+        lastChecksumTime = now;
+        lastTailReadTime = now;
+        if (changedRows > 0) {
+            logger.info("Сверка листа событий: перечитано {} строк.", changedRows);
+        }
+    }
+
+    /**
+     * Номер последней строки данных (с 1), в которой было событие; 0, если событий нет.
+     */
+    private int lastParsedRow() {
+        for (int i = rowEvents.size() - 1; i >= 0; i--) {
+            if (rowEvents.get(i) != null) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private void ingestRow(int sheetRow, List<Object> row) {
+        int dataIndex = sheetRow - 2;
+        while (rowEvents.size() <= dataIndex) {
+            rowEvents.add(null);
+            rowKeys.add(rowKey(List.of()));
+        }
 
-        if (response == null || response.getValues() == null) {
-            logger.error("Таблица пуста или данные не найдены.");
-            return Collections.emptyList();
+        Event event = row.isEmpty() ? null : createEventFromRow(row);
+        rowEvents.set(dataIndex, event);
+        rowKeys.set(dataIndex, rowKey(row));
+        if (event != null) {
+            rowIndexById.put(event.getId(), sheetRow);
         }
+    }
 
-        logger.info("Получено строк: {}", response.getValues().size());
-        List<Event> events = new ArrayList<>();
-        for (int i = 1; i < response.getValues().size(); i++) { // Пропустить заголовок
-            List<Object> row = response.getValues().get(i);
-            Event event = createEventFromRow(row);
+    private List<Event> snapshotEvents() {
+        List<Event> events = new ArrayList<>(rowEvents.size());
+        for (Event event : rowEvents) {
             if (event != null) {
                 events.add(event);
             }
         }
-
-        logger.info("Успешно получено {} событий.", events.size());
         return events;
     }
 
+    /**
+     * Содержимое разбираемых столбцов строки. Ячейки записаны с длиной, чтобы разные
+     * строки не давали одинаковый ключ; хранится сама строка, а не хеш, - без коллизий.
+     */
+    private static String rowKey(List<Object> row) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < Math.min(row.size(), 7); i++) {
+            String cell = String.valueOf(row.get(i));
+            key.append(cell.length()).append(':').append(cell);
+        }
+        return key.toString();
+    }
+
+    private static List<List<Object>> valuesOf(ValueRange range) {
+        return range == null || range.getValues() == null ? List.of() : range.getValues();
+    }
+
     public void createEvent(Event event) throws IOException {
         ValueRange body = new ValueRange()
                 .setValues(List.of(
@@ -62,7 +244,36 @@ public class EventDao {
                         )
                 ));
 
-        sheetsClient.appendValues(sheetName + "!A1", body);
+        AppendValuesResponse response = sheetsClient.appendValues(sheetName + "!A1", body);
+        stateLock.lock();
+        try {
+            lastTailReadTime = 0; // Новая строка будет дочитана при следующем запросе
+        } finally {
+            stateLock.unlock();
+        }
+
+        // Запоминаем строку нового события по диапазону из ответа
+        Integer row = parseUpdatedRow(response);
+        if (row != null) {
+            rowIndexById.put(event.getId(), row);
+        } else {
+            logger.warn("Не удалось определить строку нового события {}", event.getId());
+        }
+    }
+
+    public CompletableFuture<Void> createEventAsync(Event event) {
+        return sheetsClient.supplyAsync(() -> {
+            createEvent(event);
+            return null;
+        });
+    }
+
+    private Integer parseUpdatedRow(AppendValuesResponse response) {
+        if (response == null || response.getUpdates() == null || response.getUpdates().getUpdatedRange() == null) {
+            return null;
+        }
+        Matcher matcher = RANGE_START_ROW.matcher(response.getUpdates().getUpdatedRange());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : null;
     }
 
     private Event createEventFromRow(List<Object> row) {
@@ -84,7 +295,20 @@ public class EventDao {
 
 
     public Event findEventById(String id) throws IOException {
-        List<Event> events = getAllEvents();
+        Integer cachedRow = rowIndexById.get(id);
+        if (cachedRow != null) {
+            // Читаем только строку события
+            ValueRange response = sheetsClient.getValues(sheetName + "!A" + cachedRow + ":G" + cachedRow);
+            if (response.getValues() != null && !response.getValues().isEmpty()) {
+                Event event = createEventFromRow(response.getValues().get(0));
+                if (event != null && event.getId().equals(id)) {
+                    return event;
+                }
+            }
+            logger.warn("Строка {} больше не принадлежит событию {}. Перечитываем лист...", cachedRow, id);
+        }
+
+        List<Event> events = loadEvents(sheetsClient.getValues(sheetName));
         for (Event event : events) {
             if (event.getId().equals(id)) {
                 return event;
@@ -93,25 +317,33 @@ public class EventDao {
         return null; // Если событие не найдено
     }
 
+    public CompletableFuture<Event> findEventByIdAsync(String id) {
+        return sheetsClient.supplyAsync(() -> findEventById(id));
+    }
+
     public int findRowIndexById(String eventId) throws IOException {
-        // Получаем все строки из таблицы
-        ValueRange response = sheetsClient.getValues(sheetName);
-        List<List<Object>> values = response.getValues();
+        Integer cachedRow = rowIndexById.get(eventId);
+        if (cachedRow != null) {
+            // Проверяем одну ячейку вместо чтения всего листа
+            ValueRange cell = sheetsClient.getValues(sheetName + "!A" + cachedRow);
+            if (cell.getValues() != null && !cell.getValues().isEmpty() && !cell.getValues().get(0).isEmpty()
+                    && cell.getValues().get(0).get(0).toString().equals(eventId)) {
+                return cachedRow;
+            }
+            logger.warn("Строка {} больше не принадлежит событию {}. Перестраиваем индекс...", cachedRow, eventId);
+        }
 
-        // Проверяем, что таблица не пуста
-        if (values == null || values.isEmpty()) {
+        // Перечитываем лист, что заодно перестраивает индекс строк
+        List<Event> events = loadEvents(sheetsClient.getValues(sheetName));
+        if (events.isEmpty()) {
             throw new IOException("Таблица событий пуста.");
         }
 
-        // Ищем строку с нужным ID
-        for (int i = 1; i < values.size(); i++) { // Начинаем с 1, чтобы пропустить заголовок
-            List<Object> row = values.get(i);
-            if (row.get(0).toString().equals(eventId)) { // Проверяем ID в первом столбце
-                return i + 1; // Возвращаем номер строки (начиная с 1, так как строки в Google Sheets нумеруются с 1)
-            }
+        Integer row = rowIndexById.get(eventId);
+        if (row == null) {
+            throw new IOException("Событие с ID " + eventId + " не найдено.");
         }
-
-        throw new IOException("Событие с ID " + eventId + " не найдено.");
+        return row;
     }
 
     public void updateEvent(Event event) throws IOException {
@@ -144,8 +376,21 @@ public class EventDao {
 
         // Вызываем метод для обновления данных в таблице
         sheetsClient.updateValues(range, body);
+        stateLock.lock();
+        try {
+            if (lastIngestedRow >= rowIndex) {
+                ingestRow(rowIndex, values.get(0));
+            }
+        } finally {
+            stateLock.unlock();
+        }
         logger.info("Событие успешно обновлено.");
     }
 
-
+    public CompletableFuture<Void> updateEventAsync(Event event) {
+        return sheetsClient.supplyAsync(() -> {
+            updateEvent(event);
+            return null;
+        });
+    }
 }
\ No newline at end of file
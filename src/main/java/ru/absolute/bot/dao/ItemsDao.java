@@ -1,29 +1,47 @@
 package ru.absolute.bot.dao;
 
 import com.google.api.services.sheets.v4.model.ValueRange;
-import ru.absolute.bot.clients.GoogleSheetsClient;
+import ru.absolute.bot.clients.SheetsBackend;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class ItemsDao {
-    private final GoogleSheetsClient sheetsClient;
+    private final SheetsBackend sheetsClient;
     private final String sheetName;
 
-    public ItemsDao(GoogleSheetsClient sheetsClient, String sheetName) {
+    public ItemsDao(SheetsBackend sheetsClient, String sheetName) {
         this.sheetsClient = sheetsClient;
         this.sheetName = sheetName;
     }
 
+    public String getSheetName() {
+        return sheetName;
+    }
+
     /**
      * Получает все предметы из таблицы.
      */
     public Map<String, String> getAllItems() throws IOException {
-        ValueRange response = sheetsClient.getValues(sheetName);
+        return parseItems(sheetsClient.getValues(sheetName));
+    }
+
+    public CompletableFuture<Map<String, String>> getAllItemsAsync() {
+        return sheetsClient.supplyAsync(this::getAllItems);
+    }
 
+    /**
+     * Разбирает содержимое листа предметов, полученное отдельным или пакетным запросом.
+     */
+    public Map<String, String> parseItems(ValueRange response) {
         Map<String, String> itemsMap = new HashMap<>();
+        if (response == null || response.getValues() == null) {
+            return itemsMap;
+        }
+
         for (int i = 1; i < response.getValues().size(); i++) { // Пропускаем заголовок
             List<Object> row = response.getValues().get(i);
             if (row.size() >= 2) { // Проверяем, что строка содержит ID и название
@@ -0,0 +1,148 @@
+package ru.absolute.bot.dao;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.absolute.bot.clients.SheetsBackend;
+import ru.absolute.bot.models.Boss;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Загружает листы боссов, предметов, палилок и событий одним запросом batchGet
+ * и раздает каждому DAO его часть. Для периодических обновлений умеет перечитывать
+ * только те листы, у которых изменился отпечаток узкого диапазона.
+ */
+public class SheetsBulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(SheetsBulkLoader.class);
+
+    private final SheetsBackend sheetsClient;
+    private final BossDao bossDao;
+    private final ItemsDao itemsDao;
+    private final EventDao eventDao;
+    // Диапазоны-пробы, по отпечатку которых определяется, менялся ли лист
+    private final List<String> bossesFingerprintRanges;
+    private final List<String> itemsFingerprintRanges;
+    private final List<String> checkersFingerprintRanges = List.of(BossDao.CHECKERS_RANGE);
+
+    /**
+     * Результат загрузки. При условном обновлении неизменившиеся части равны null.
+     */
+    public record Result(List<Boss> bosses, Map<String, String> items, Map<Integer, String> checkers) {
+    }
+
+    public SheetsBulkLoader(SheetsBackend sheetsClient, BossDao bossDao, ItemsDao itemsDao, EventDao eventDao) {
+        this.sheetsClient = sheetsClient;
+        this.bossDao = bossDao;
+        this.itemsDao = itemsDao;
+        this.eventDao = eventDao;
+        // По умолчанию проба - сам лист: узкий диапазон, покрывающий все разбираемые столбцы,
+        // стоил бы почти столько же, а при изменении лист пришлось бы скачивать второй раз.
+        // Изменившийся лист разбирается прямо из ответа пробы. Если в таблице есть ячейка
+        // с номером версии листа (или другой узкий диапазон, который меняется при любой правке),
+        // ее можно указать здесь - тогда лист читается вторым запросом только при изменении
+        this.bossesFingerprintRanges = fingerprintRanges("SHEETS_BOSSES_FINGERPRINT_RANGE", bossDao.getSheetName());
+        this.itemsFingerprintRanges = fingerprintRanges("SHEETS_ITEMS_FINGERPRINT_RANGE", itemsDao.getSheetName());
+    }
+
+    /**
+     * Загружает все листы за один запрос. События сразу передаются в EventDao,
+     * боссы, предметы и палилки возвращаются вызывающему для кеширования.
+     */
+    public Result loadAll() throws IOException {
+        logger.info("Пакетная загрузка листов боссов, предметов, палилок и событий...");
+        List<String> fullRanges = fullRanges();
+        List<List<String>> probeRanges = probeRanges();
+        List<String> requested = new ArrayList<>(fullRanges);
+        requested.add(eventDao.getSheetName());
+        for (int i = 0; i < fullRanges.size(); i++) {
+            if (!coversSheet(probeRanges.get(i), fullRanges.get(i))) {
+                requested.addAll(probeRanges.get(i));
+            }
+        }
+        List<ValueRange> ranges = sheetsClient.batchGetValues(requested);
+
+        int offset = fullRanges.size() + 1;
+        for (int i = 0; i < fullRanges.size(); i++) {
+            List<String> probes = probeRanges.get(i);
+            if (coversSheet(probes, fullRanges.get(i))) {
+                sheetsClient.rememberFingerprint(probes, List.of(ranges.get(i))); // Проба и есть лист
+            } else {
+                sheetsClient.rememberFingerprint(probes, ranges.subList(offset, offset + probes.size()));
+                offset += probes.size();
+            }
+        }
+
+        List<Boss> bosses = bossDao.parseBosses(ranges.get(0));
+        Map<String, String> items = itemsDao.parseItems(ranges.get(1));
+        Map<Integer, String> checkers = bossDao.parseCheckers(ranges.get(2));
+        eventDao.loadEvents(ranges.get(3));
+
+        logger.info("Пакетная загрузка завершена: {} боссов, {} предметов.", bosses.size(), items.size());
+        return new Result(bosses, items, checkers);
+    }
+
+    public CompletableFuture<Result> loadAllAsync() {
+        return sheetsClient.supplyAsync(this::loadAll);
+    }
+
+    /**
+     * Проверяет отпечатки листов боссов, предметов и палилок и перечитывает только изменившиеся.
+     * Всегда стоит одного запроса-пробы; если ничего не изменилось, все части результата равны null.
+     * События сюда не входят: у EventDao свое инкрементальное чтение.
+     */
+    public Result loadChanged() throws IOException {
+        List<ValueRange> ranges = sheetsClient.batchGetIfChanged(probeRanges(), fullRanges());
+
+        List<Boss> bosses = ranges.get(0) != null ? bossDao.parseBosses(ranges.get(0)) : null;
+        Map<String, String> items = ranges.get(1) != null ? itemsDao.parseItems(ranges.get(1)) : null;
+        Map<Integer, String> checkers = ranges.get(2) != null ? bossDao.parseCheckers(ranges.get(2)) : null;
+
+        if (bosses == null && items == null && checkers == null) {
+            logger.info("Листы боссов, предметов и палилок не изменились.");
+        } else {
+            logger.info("Перечитаны изменившиеся листы: боссы {}, предметы {}, палилки {}.",
+                    bosses != null, items != null, checkers != null);
+        }
+        return new Result(bosses, items, checkers);
+    }
+
+    public CompletableFuture<Result> loadChangedAsync() {
+        return sheetsClient.supplyAsync(this::loadChanged);
+    }
+
+    /**
+     * true, если проба листа боссов - сам лист: тогда неизменившийся отпечаток означает,
+     * что и время убийства в кеше совпадает с таблицей.
+     */
+    public boolean bossesProbeCoversSheet() {
+        return coversSheet(bossesFingerprintRanges, bossDao.getSheetName());
+    }
+
+    private List<String> fullRanges() {
+        return List.of(bossDao.getSheetName(), itemsDao.getSheetName(), BossDao.CHECKERS_RANGE);
+    }
+
+    private List<List<String>> probeRanges() {
+        return List.of(bossesFingerprintRanges, itemsFingerprintRanges, checkersFingerprintRanges);
+    }
+
+    private static boolean coversSheet(List<String> probeRanges, String fullRange) {
+        return probeRanges.size() == 1 && probeRanges.get(0).equals(fullRange);
+    }
+
+    private static List<String> fingerprintRanges(String key, String defaultRanges) {
+        List<String> ranges = new ArrayList<>();
+        for (String range : ConfigLoader.getProperty(key, defaultRanges).split(",")) {
+            if (!range.isBlank()) {
+                ranges.add(range.trim());
+            }
+        }
+        return List.copyOf(ranges);
+    }
+}
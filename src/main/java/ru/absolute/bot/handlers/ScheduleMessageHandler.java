@@ -0,0 +1,43 @@
+package ru.absolute.bot.handlers;
+
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+import ru.absolute.bot.commands.ShowCommand;
+
+/**
+ * Следит за удалением сообщений и каналов, чтобы ShowCommand не обновлял таблицы,
+ * которых больше нет. События приходят через шлюз, запросов к API не требуется.
+ */
+@Slf4j
+public class ScheduleMessageHandler extends ListenerAdapter {
+    private final ShowCommand showCommand;
+
+    public ScheduleMessageHandler(ShowCommand showCommand) {
+        this.showCommand = showCommand;
+    }
+
+    @Override
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        showCommand.onMessageDeleted(event.getMessageIdLong());
+    }
+
+    @Override
+    public void onMessageBulkDelete(@NotNull MessageBulkDeleteEvent event) {
+        for (String messageId : event.getMessageIds()) {
+            try {
+                showCommand.onMessageDeleted(Long.parseLong(messageId));
+            } catch (NumberFormatException e) {
+                log.warn("Некорректный ID удаленного сообщения: {}", messageId);
+            }
+        }
+    }
+
+    @Override
+    public void onChannelDelete(@NotNull ChannelDeleteEvent event) {
+        showCommand.onChannelDeleted(event.getChannel().getIdLong());
+    }
+}
@@ -1,24 +1,28 @@
 package ru.absolute.bot.models;
 
 import lombok.Getter;
-import lombok.Setter;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
+import lombok.With;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Босс из таблицы. Неизменяемый: новое время убийства дает новый объект через {@link #withKillTime},
+ * поэтому опубликованные снимки кеша не меняются у читателей на глазах.
+ */
 @Getter
-@Setter
 @AllArgsConstructor
 @ToString
 public class Boss {
-    private int id;
-    private String name;
-    private int level;
-    private LocalDateTime killTime;
-    private List<String> itemList;
-    private String location;
-    private String checkersId;
+    private final int id;
+    private final String name;
+    private final int level;
+    @With
+    private final LocalDateTime killTime;
+    private final List<String> itemList;
+    private final String location;
+    private final String checkersId;
 }
\ No newline at end of file
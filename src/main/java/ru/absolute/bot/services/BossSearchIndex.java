@@ -0,0 +1,317 @@
+package ru.absolute.bot.services;
+
+import net.dv8tion.jda.api.interactions.commands.Command;
+import ru.absolute.bot.models.Boss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Поисковый индекс имен боссов для автозаполнения. Строится один раз вместе со снимком кеша.
+ * Имена приводятся к одной латинской записи (транслитерация), поэтому "кабрио", "kabrio"
+ * и набранное в неверной раскладке "rf,hbj" находят одного и того же босса.
+ * Префиксы имен и слов хранят уже отсортированные готовые списки {@link Command.Choice};
+ * остальные запросы (подстрока, опечатки по триграммам) считаются один раз и запоминаются.
+ */
+final class BossSearchIndex {
+    // Discord показывает не больше 25 вариантов, длина названия варианта - до 100 символов
+    private static final int MAX_CHOICES = 25;
+    private static final int MAX_CHOICE_LENGTH = 100;
+    private static final int MAX_PREFIX_LENGTH = 32;
+    private static final int MAX_MEMO_SIZE = 10_000;
+
+    private static final String LATIN_KEYS = "`qwertyuiop[]asdfghjkl;'zxcvbnm,.";
+    private static final String CYRILLIC_KEYS = "ёйцукенгшщзхъфывапролджэячсмитьбю";
+    private static final String[] TRANSLIT = {
+            "a", "b", "v", "g", "d", "e", "zh", "z", "i", "i", "k", "l", "m", "n", "o", "p",
+            "r", "s", "t", "u", "f", "h", "c", "ch", "sh", "sch", "", "y", "", "e", "yu", "ya"
+    };
+
+    /**
+     * Найденные боссы в порядке релевантности и готовые варианты автозаполнения для них.
+     *
+     * @param detailed варианты вида "Имя [уровень], локация"
+     * @param names    варианты, где показывается только имя
+     */
+    record Matches(int[] positions, List<Command.Choice> detailed, List<Command.Choice> names) {
+    }
+
+    private final String[] keys;
+    private final Command.Choice[] detailedChoices;
+    private final Command.Choice[] nameChoices;
+    private final Map<String, Matches> byPrefix;
+    private final Map<String, int[]> byTrigram;
+    private final Matches all;
+    private final Map<String, Matches> memo = new ConcurrentHashMap<>();
+
+    private BossSearchIndex(List<Boss> bosses) {
+        int size = bosses.size();
+        this.keys = new String[size];
+        this.detailedChoices = new Command.Choice[size];
+        this.nameChoices = new Command.Choice[size];
+        for (int i = 0; i < size; i++) {
+            Boss boss = bosses.get(i);
+            keys[i] = canonical(boss.getName());
+            detailedChoices[i] = new Command.Choice(
+                    truncate(String.format("%s [%d], %s", boss.getName(), boss.getLevel(), boss.getLocation())),
+                    boss.getName());
+            nameChoices[i] = new Command.Choice(truncate(boss.getName()), boss.getName());
+        }
+
+        int[] first = new int[Math.min(size, MAX_CHOICES)];
+        Arrays.setAll(first, i -> i);
+        this.all = matches(first);
+        this.byPrefix = buildPrefixes();
+        this.byTrigram = buildTrigrams();
+    }
+
+    static BossSearchIndex build(List<Boss> bosses) {
+        return new BossSearchIndex(bosses);
+    }
+
+    /**
+     * Ищет боссов по введенной части имени. Результат повторного запроса берется из памяти.
+     */
+    Matches search(String input) {
+        Matches cached = memo.get(input);
+        if (cached != null) {
+            return cached;
+        }
+        Matches found = find(input);
+        if (memo.size() >= MAX_MEMO_SIZE) {
+            memo.clear();
+        }
+        memo.put(input, found);
+        return found;
+    }
+
+    private Matches find(String input) {
+        String query = canonical(input);
+        if (query.isEmpty()) {
+            return all;
+        }
+        String swapped = canonical(swapLayout(input));
+        boolean hasSwapped = !swapped.isEmpty() && !swapped.equals(query);
+
+        Matches direct = byPrefix.get(query);
+        Matches layout = hasSwapped ? byPrefix.get(swapped) : null;
+        if (direct != null && (layout == null || direct.positions().length == MAX_CHOICES)) {
+            return direct;
+        }
+        if (direct == null && layout != null && layout.positions().length == MAX_CHOICES) {
+            return layout;
+        }
+
+        // Префиксов не хватило: добавляем совпадения в середине слова и похожие имена
+        Ranking ranking = new Ranking(keys.length);
+        ranking.addAll(direct);
+        ranking.addAll(layout);
+        addSubstrings(ranking, query);
+        if (hasSwapped) {
+            addSubstrings(ranking, swapped);
+        }
+        addSimilar(ranking, query);
+        if (hasSwapped) {
+            addSimilar(ranking, swapped);
+        }
+        return matches(ranking.toArray());
+    }
+
+    private void addSubstrings(Ranking ranking, String query) {
+        for (int i = 0; i < keys.length && !ranking.isFull(); i++) {
+            if (keys[i].contains(query)) {
+                ranking.add(i);
+            }
+        }
+    }
+
+    /**
+     * Допускает опечатки: подходят имена, с которыми у запроса общая хотя бы половина триграмм.
+     */
+    private void addSimilar(Ranking ranking, String query) {
+        List<String> trigrams = trigrams(query);
+        if (ranking.isFull() || trigrams.size() < 2) {
+            return;
+        }
+        int[] shared = new int[keys.length];
+        for (String trigram : trigrams) {
+            int[] positions = byTrigram.get(trigram);
+            if (positions != null) {
+                for (int position : positions) {
+                    shared[position]++;
+                }
+            }
+        }
+        int threshold = (trigrams.size() + 1) / 2;
+        Integer[] candidates = new Integer[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (shared[i] >= threshold) {
+                candidates[count++] = i;
+            }
+        }
+        Arrays.sort(candidates, 0, count, (a, b) -> shared[a] != shared[b]
+                ? Integer.compare(shared[b], shared[a])
+                : Integer.compare(keys[a].length(), keys[b].length()));
+        for (int i = 0; i < count && !ranking.isFull(); i++) {
+            ranking.add(candidates[i]);
+        }
+    }
+
+    /**
+     * Для каждого префикса имени и каждого слова в имени - до 25 боссов:
+     * сначала точное совпадение, затем начало имени, затем начало слова; короткие имена выше.
+     */
+    private Map<String, Matches> buildPrefixes() {
+        Map<String, Map<Integer, Integer>> rankByPrefix = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            for (int start = 0; start < key.length(); start++) {
+                if (start > 0 && key.charAt(start - 1) != ' ') {
+                    continue;
+                }
+                int end = Math.min(key.length(), start + MAX_PREFIX_LENGTH);
+                for (int length = 1; start + length <= end; length++) {
+                    int rank = start > 0 ? 2 : (length == key.length() ? 0 : 1);
+                    rankByPrefix.computeIfAbsent(key.substring(start, start + length), ignored -> new HashMap<>())
+                            .merge(i, rank, Math::min);
+                }
+            }
+        }
+
+        Map<String, Matches> prefixes = new HashMap<>(rankByPrefix.size() * 2);
+        rankByPrefix.forEach((prefix, ranks) -> {
+            int[] positions = ranks.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Integer>comparingByValue()
+                            .thenComparing(entry -> keys[entry.getKey()].length())
+                            .thenComparing(Map.Entry::getKey))
+                    .limit(MAX_CHOICES)
+                    .mapToInt(Map.Entry::getKey)
+                    .toArray();
+            prefixes.put(prefix, matches(positions));
+        });
+        return prefixes;
+    }
+
+    private Map<String, int[]> buildTrigrams() {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            for (String trigram : trigrams(keys[i])) {
+                List<Integer> positions = postings.computeIfAbsent(trigram, ignored -> new ArrayList<>());
+                if (positions.isEmpty() || positions.get(positions.size() - 1) != i) {
+                    positions.add(i);
+                }
+            }
+        }
+        Map<String, int[]> trigrams = new HashMap<>(postings.size() * 2);
+        postings.forEach((trigram, positions) ->
+                trigrams.put(trigram, positions.stream().mapToInt(Integer::intValue).toArray()));
+        return trigrams;
+    }
+
+    private Matches matches(int[] positions) {
+        Command.Choice[] detailed = new Command.Choice[positions.length];
+        Command.Choice[] names = new Command.Choice[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            detailed[i] = detailedChoices[positions[i]];
+            names[i] = nameChoices[positions[i]];
+        }
+        return new Matches(positions, List.of(detailed), List.of(names));
+    }
+
+    /**
+     * Триграммы с пробелом в начале: начало слова весит больше, конец не дополняется,
+     * потому что пользователь еще может дописывать имя.
+     */
+    private static List<String> trigrams(String key) {
+        String padded = " " + key;
+        List<String> trigrams = new ArrayList<>(Math.max(0, padded.length() - 2));
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Ключ поиска: нижний регистр, кириллица в латинской транслитерации,
+     * прочие символы кроме букв и цифр - одиночные пробелы.
+     */
+    static String canonical(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c >= 'а' && c <= 'я') {
+                key.append(TRANSLIT[c - 'а']);
+            } else if (c == 'ё') {
+                key.append('e');
+            } else if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            } else if (!key.isEmpty() && key.charAt(key.length() - 1) != ' ') {
+                key.append(' ');
+            }
+        }
+        int length = key.length();
+        return length > 0 && key.charAt(length - 1) == ' ' ? key.substring(0, length - 1) : key.toString();
+    }
+
+    /**
+     * Текст, набранный в другой раскладке: латинские клавиши заменяются кириллическими и наоборот.
+     */
+    static String swapLayout(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder swapped = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            int latin = LATIN_KEYS.indexOf(c);
+            int cyrillic = CYRILLIC_KEYS.indexOf(c);
+            swapped.append(latin >= 0 ? CYRILLIC_KEYS.charAt(latin) : cyrillic >= 0 ? LATIN_KEYS.charAt(cyrillic) : c);
+        }
+        return swapped.toString();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_CHOICE_LENGTH ? text : text.substring(0, MAX_CHOICE_LENGTH - 1) + "…";
+    }
+
+    /**
+     * Список позиций без повторов в порядке добавления, не длиннее 25.
+     */
+    private static final class Ranking {
+        private final boolean[] added;
+        private final int[] positions = new int[MAX_CHOICES];
+        private int size = 0;
+
+        Ranking(int bossCount) {
+            this.added = new boolean[bossCount];
+        }
+
+        void addAll(Matches matches) {
+            if (matches != null) {
+                for (int position : matches.positions()) {
+                    add(position);
+                }
+            }
+        }
+
+        void add(int position) {
+            if (!isFull() && !added[position]) {
+                added[position] = true;
+                positions[size++] = position;
+            }
+        }
+
+        boolean isFull() {
+            return size == MAX_CHOICES;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package ru.absolute.bot.services;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.interactions.commands.Command;
 import ru.absolute.bot.models.Boss;
 
 import ru.absolute.bot.dao.BossDao;
 import ru.absolute.bot.dao.ItemsDao;
+import ru.absolute.bot.dao.SheetsBulkLoader;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -15,43 +17,73 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Slf4j
 public class BossService {
     private final BossDao bossDao;
     private final ItemsDao itemsDao;
+    private final SheetsBulkLoader bulkLoader;
+    private final CheckerDirectory checkerDirectory;
+    private final OperationJournal journal;
 
-    // Кеш для хранения списка боссов
-    private List<Boss> bossesCache;
-    private long lastBossesUpdateTime = 0;
+    // Снимок кеша боссов и предметов. Читатели берут текущий снимок без блокировок,
+    // обновление собирает новый снимок в фоне и публикует его целиком
+    private final AtomicReference<BossSnapshot> snapshot = new AtomicReference<>();
+    // Текущее обновление: одновременные запросы ждут одно и то же обновление, а не запускают свои
+    private final AtomicReference<CompletableFuture<BossSnapshot>> refreshInFlight = new AtomicReference<>();
+    // Подписчики на публикацию нового снимка (таймеры респа и т.п.)
+    private final List<Consumer<List<Boss>>> snapshotListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "boss-cache-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Время убийства обновляется частично (столбцы A и D), полная перезагрузка всех листов идет реже
     private static final long BOSSES_CACHE_EXPIRATION_TIME = 30 * 60 * 1000; // 30 минут
 
-    // Кеш для хранения предметов (ID -> Name)
-    private Map<String, String> itemsMap;
-    private long lastItemsUpdateTime = 0;
-    private static final long ITEMS_CACHE_EXPIRATION_TIME = 30 * 60 * 1000; // 30 минут
+    // Проверка отпечатков листов: перечитываются только изменившиеся листы
+    private static final long CHANGE_CHECK_INTERVAL = 30 * 60 * 1000; // 30 минут
+
+    // Безусловная перезагрузка боссов, предметов, палилок и событий. Отпечатки по умолчанию покрывают
+    // все разбираемые столбцы, так что это страховка для отпечатков, заданных в конфигурации вручную
+    private static final long FULL_RELOAD_INTERVAL = 24 * 60 * 60 * 1000; // 24 часа
+
+    // Фоновое обновление начинается заранее, чтобы читатели не застали устаревший снимок
+    private static final long REFRESH_AHEAD_TIME = 2 * 60 * 1000; // 2 минуты
+    private static final long REFRESH_CHECK_INTERVAL = 60 * 1000; // 1 минута
 
-    public BossService(BossDao bossDao, ItemsDao itemsDao) {
+    public BossService(BossDao bossDao, ItemsDao itemsDao, SheetsBulkLoader bulkLoader, OperationJournal journal) {
         this.bossDao = bossDao;
         this.itemsDao = itemsDao;
+        this.bulkLoader = bulkLoader;
+        this.checkerDirectory = new CheckerDirectory(bossDao);
+        this.journal = journal;
         initializeCache(); // Инициализируем кеш при создании сервиса
+        journal.register(OperationJournal.Type.KILL, this::applyKill);
+        refresher.scheduleWithFixedDelay(this::refreshAhead,
+                REFRESH_CHECK_INTERVAL, REFRESH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Инициализирует кеш при старте сервиса.
+     * Инициализирует кеш при старте сервиса. Это единственная загрузка, которую ждут.
      */
     private void initializeCache() {
         try {
-            // Загружаем всех боссов в кеш
-            this.bossesCache = bossDao.getAllBosses();
-            this.lastBossesUpdateTime = System.currentTimeMillis();
+            // Загружаем боссов, предметы, палилок и события одним запросом
+            BossSnapshot loaded = fromLoadResult(bulkLoader.loadAll());
+            snapshot.set(loaded);
 
-            // Загружаем все предметы в кеш
-            this.itemsMap = itemsDao.getAllItems();
-            this.lastItemsUpdateTime = System.currentTimeMillis();
-
-            log.info("Кеш инициализирован. Загружено {} боссов и {} предметов.", bossesCache.size(), itemsMap.size());
+            log.info("Кеш инициализирован. Загружено {} боссов и {} предметов.",
+                    loaded.bosses().size(), loaded.items().size());
         } catch (IOException e) {
             log.error("Ошибка при инициализации кеша", e);
             throw new RuntimeException("Не удалось инициализировать кеш", e);
@@ -59,90 +91,234 @@ public class BossService {
     }
 
     /**
-     * Получает всех боссов из кеша.
+     * Получает всех боссов из кеша. Никогда не ждет хранилище: если снимок устарел,
+     * возвращается он же, а обновление запускается в фоне.
      */
     public List<Boss> getAllBosses() {
-        long currentTime = System.currentTimeMillis();
-        if (bossesCache == null || currentTime - lastBossesUpdateTime > BOSSES_CACHE_EXPIRATION_TIME) {
-            try {
-                log.info("Кеш боссов устарел. Перезагружаем...");
-                this.bossesCache = bossDao.getAllBosses();
-                this.lastBossesUpdateTime = currentTime;
-            } catch (IOException e) {
-                log.error("Ошибка при обновлении кеша боссов", e);
-                throw new RuntimeException("Не удалось обновить кеш боссов", e);
-            }
-        }
-        return bossesCache;
+        return currentSnapshot().bosses();
+    }
+
+    /**
+     * Асинхронный вариант {@link #getAllBosses()}. Снимок доступен всегда, поэтому future уже завершен.
+     */
+    public CompletableFuture<List<Boss>> getAllBossesAsync() {
+        return CompletableFuture.completedFuture(getAllBosses());
     }
 
     /**
-     * Находит босса по полному совпадению имени.
+     * Находит босса по полному совпадению имени (без учета регистра) через индекс снимка.
      */
     public Boss findBossByName(String bossName) {
-        return getAllBosses().stream()
-                .filter(boss -> boss.getName().equalsIgnoreCase(bossName))
-                .findFirst()
-                .orElse(null);
+        return currentSnapshot().findByName(bossName);
+    }
+
+    /**
+     * Варианты автозаполнения имени босса вида "Имя [уровень], локация".
+     * Списки готовятся при обновлении кеша, поэтому запрос стоит нескольких обращений к карте.
+     */
+    public List<Command.Choice> suggestBosses(String userInput) {
+        return currentSnapshot().searchIndex().search(userInput).detailed();
     }
 
     /**
-     * Находит боссов по частичному совпадению имени.
+     * Варианты автозаполнения имени босса, где показывается только имя.
      */
-    public List<Boss> findBossesByName(String partialName) {
-        String lowerCasePartialName = partialName.toLowerCase();
-        return getAllBosses().stream()
-                .filter(boss -> boss.getName().toLowerCase().contains(lowerCasePartialName))
-                .collect(Collectors.toList());
+    public List<Command.Choice> suggestBossNames(String userInput) {
+        return currentSnapshot().searchIndex().search(userInput).names();
     }
 
     /**
      * Получает кэшированную карту предметов (ID -> Name).
      */
     public Map<String, String> getItemsMap() {
-        long currentTime = System.currentTimeMillis();
-        if (itemsMap == null || currentTime - lastItemsUpdateTime > ITEMS_CACHE_EXPIRATION_TIME) {
-            try {
-                // Обновляем кеш
-                this.itemsMap = itemsDao.getAllItems();
-                this.lastItemsUpdateTime = currentTime;
-                log.info("Кэш предметов обновлен. Загружено {} записей.", itemsMap.size());
-            } catch (IOException e) {
-                log.error("Ошибка при обновлении кэша предметов", e);
-                throw new RuntimeException("Не удалось обновить кэш предметов", e);
+        return currentSnapshot().items();
+    }
+
+    /**
+     * Каталог предметов дропа текущего снимка: готовые варианты меню и названия предметов.
+     */
+    public ItemCatalog getItemCatalog() {
+        return currentSnapshot().itemCatalog();
+    }
+
+    /**
+     * Текущий снимок; если он устарел, запускает фоновое обновление (stale-while-revalidate).
+     */
+    private BossSnapshot currentSnapshot() {
+        BossSnapshot current = snapshot.get();
+        if (isDue(current, System.currentTimeMillis())) {
+            refreshAsync();
+        }
+        return current;
+    }
+
+    /**
+     * Плановая проверка: обновляет снимок чуть раньше истечения срока.
+     */
+    private void refreshAhead() {
+        if (isDue(snapshot.get(), System.currentTimeMillis() + REFRESH_AHEAD_TIME)) {
+            refreshAsync();
+        }
+    }
+
+    private static boolean isDue(BossSnapshot current, long time) {
+        return time - current.fullReloadTime() > FULL_RELOAD_INTERVAL
+                || time - current.changeCheckTime() > CHANGE_CHECK_INTERVAL
+                || time - current.killTimesTime() > BOSSES_CACHE_EXPIRATION_TIME;
+    }
+
+    /**
+     * Запускает обновление снимка, если оно еще не идет, и возвращает future текущего обновления.
+     */
+    private CompletableFuture<BossSnapshot> refreshAsync() {
+        while (true) {
+            CompletableFuture<BossSnapshot> running = refreshInFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<BossSnapshot> promise = new CompletableFuture<>();
+            if (refreshInFlight.compareAndSet(null, promise)) {
+                BossSnapshot base = snapshot.get();
+                loadNext(base).whenComplete((next, error) -> {
+                    refreshInFlight.set(null);
+                    if (error != null) {
+                        log.error("Ошибка при обновлении кеша боссов. Используется прежний снимок.", error);
+                        promise.completeExceptionally(error);
+                    } else {
+                        BossSnapshot published = snapshot.updateAndGet(current -> rebase(next, base, current));
+                        if (published != base) {
+                            notifySnapshotListeners();
+                        }
+                        promise.complete(published);
+                    }
+                });
+                return promise;
             }
         }
-        return itemsMap;
+    }
+
+    /**
+     * Переносит в загруженный снимок убийства, опубликованные, пока шла загрузка:
+     * иначе обновление, начатое до убийства, вернуло бы старое время.
+     */
+    private static BossSnapshot rebase(BossSnapshot loaded, BossSnapshot base, BossSnapshot current) {
+        if (current == base) {
+            return loaded;
+        }
+        BossSnapshot result = loaded;
+        for (Boss boss : current.bosses()) {
+            Boss before = base.findById(boss.getId());
+            Boss after = result.findById(boss.getId());
+            if (before != null && after != null && !Objects.equals(before.getKillTime(), boss.getKillTime())) {
+                result = result.withBoss(after.withKillTime(boss.getKillTime()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Собирает следующий снимок: полная перезагрузка, если подошел ее срок, иначе
+     * перечитывание изменившихся листов и обновление времени убийства.
+     */
+    private CompletableFuture<BossSnapshot> loadNext(BossSnapshot current) {
+        long now = System.currentTimeMillis();
+        if (now - current.fullReloadTime() > FULL_RELOAD_INTERVAL) {
+            log.info("Кеш боссов устарел. Перезагружаем...");
+            return bulkLoader.loadAllAsync().thenApply(this::fromLoadResult);
+        }
+
+        CompletableFuture<BossSnapshot> changed = now - current.changeCheckTime() > CHANGE_CHECK_INTERVAL
+                ? bulkLoader.loadChangedAsync().thenApply(result -> applyChanges(current, result))
+                : CompletableFuture.completedFuture(current);
+        return changed.thenCompose(next -> System.currentTimeMillis() - next.killTimesTime() > BOSSES_CACHE_EXPIRATION_TIME
+                ? refreshKillTimes(next)
+                : CompletableFuture.completedFuture(next));
+    }
+
+    private BossSnapshot fromLoadResult(SheetsBulkLoader.Result result) {
+        long loadTime = System.currentTimeMillis();
+        checkerDirectory.load(result.checkers());
+        return BossSnapshot.of(result.bosses(), result.items(), loadTime, loadTime, loadTime);
+    }
+
+    /**
+     * Применяет результат условного обновления: заменяются только перечитанные части снимка,
+     * неизменившиеся остаются прежними объектами.
+     */
+    private BossSnapshot applyChanges(BossSnapshot current, SheetsBulkLoader.Result result) {
+        long loadTime = System.currentTimeMillis();
+        if (result.checkers() != null) {
+            checkerDirectory.load(result.checkers());
+        }
+        if (result.items() != null) {
+            log.info("Кэш предметов обновлен. Загружено {} записей.", result.items().size());
+        }
+        if (result.bosses() != null) {
+            // Полный лист содержит и свежее время убийства
+            return BossSnapshot.of(result.bosses(),
+                    result.items() != null ? result.items() : current.items(),
+                    current.fullReloadTime(), loadTime, loadTime);
+        }
+        BossSnapshot next = current.withItems(result.items() != null ? result.items() : current.items(), loadTime);
+        // Проба прочитала лист боссов целиком и он не изменился - время убийства тоже проверено
+        return bulkLoader.bossesProbeCoversSheet() ? next.withKillTimes(next.bosses(), loadTime) : next;
+    }
+
+    /**
+     * Обновляет только время убийства (столбцы A и D). Если строки листа изменились,
+     * выполняет полную перезагрузку.
+     */
+    private CompletableFuture<BossSnapshot> refreshKillTimes(BossSnapshot current) {
+        log.info("Время убийства в кеше устарело. Обновляем...");
+        return bossDao.refreshKillTimesAsync(current.bosses()).thenCompose(refreshed -> {
+            if (refreshed == null) {
+                return bulkLoader.loadAllAsync().thenApply(this::fromLoadResult);
+            }
+            // Порядок боссов не изменился, поэтому индекс позиций остается прежним
+            return CompletableFuture.completedFuture(current.withKillTimes(refreshed, System.currentTimeMillis()));
+        });
     }
 
     /**
      * Обновляет время убийства босса с указанным временем и обновляет кеш.
+     * Операция сначала сохраняется в журнал на диске, затем применяется к кешу и хранилищу;
+     * если запись в хранилище не удалась, журнал повторит ее позже.
      * @param bossName имя босса
      * @param killTime время убийства (Instant)
-     * @throws IOException если произошла ошибка при обновлении данных
-     * @throws IllegalArgumentException если босс не найден
+     * @return future, завершающийся после записи в журнал; IllegalArgumentException, если босс не найден
      */
-    public void updateKillTime(String bossName, Instant killTime) throws IOException {
+    public CompletableFuture<Void> updateKillTimeAsync(String bossName, Instant killTime) {
         Boss boss = findBossByName(bossName);
-        if (boss != null) {
-            // Конвертируем Instant в LocalDateTime (используем системный часовой пояс)
-            LocalDateTime killDateTime = LocalDateTime.ofInstant(killTime, ZoneId.systemDefault());
-
-            // Обновляем время убийства (убираем наносекунды для точности)
-            boss.setKillTime(killDateTime.withNano(0));
-
-            // Обновляем данные в Google Sheets
-            bossDao.updateBoss(boss);
+        if (boss == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Босс с именем " + bossName + " не найден."));
+        }
 
-            // Обновляем кеш
-            bossesCache = bossDao.getAllBosses();
-            lastBossesUpdateTime = System.currentTimeMillis();
+        LocalDateTime killDateTime = LocalDateTime.ofInstant(killTime, ZoneId.systemDefault()).withNano(0);
+        return journal.submit(OperationJournal.Entry.kill(boss.getId(), boss.getName(), killDateTime));
+    }
 
-            log.info("Время убийства босса {} обновлено на {}. Кеш обновлен.",
-                    bossName, killDateTime);
-        } else {
-            throw new IllegalArgumentException("Босс с именем " + bossName + " не найден.");
+    /**
+     * Применяет убийство из журнала: публикует снимок, где заменен только этот босс,
+     * и записывает строку босса в хранилище. Лист после записи не перечитывается.
+     */
+    private CompletableFuture<Void> applyKill(OperationJournal.Entry entry, boolean retry) {
+        BossSnapshot published = snapshot.updateAndGet(current -> {
+            Boss boss = current.findById(entry.getBossId());
+            return boss != null ? current.withBoss(boss.withKillTime(entry.getKillTime())) : current;
+        });
+        Boss boss = published.findById(entry.getBossId());
+        if (boss == null) {
+            log.warn("Босс {} из журнала больше не найден. Операция пропущена.", entry.getBossName());
+            return CompletableFuture.completedFuture(null);
         }
+        notifySnapshotListeners();
+
+        return bossDao.updateBossAsync(boss)
+                .thenAccept(ignored -> {
+                    log.info("Время убийства босса {} обновлено на {}. Кеш обновлен.",
+                            boss.getName(), entry.getKillTime());
+                });
     }
 
     public List<String> getCheckerLoginsForBoss(int bossId) {
@@ -151,45 +327,38 @@ public class BossService {
             if (boss == null || boss.getCheckersId() == null) {
                 return Collections.emptyList();
             }
-            return getCheckerLogins(boss.getCheckersId());
+            return checkerDirectory.resolve(boss.getCheckersId());
         } catch (Exception e) {
             log.error("Ошибка получения проверяющих для босса {}", bossId, e);
             return Collections.emptyList();
         }
     }
 
-    private List<String> getCheckerLogins(String checkersId) {
-        if (checkersId == null || checkersId.isEmpty() || checkersId.equals("{}")) {
-            return Collections.emptyList();
-        }
-
-        List<String> logins = new ArrayList<>();
-        String[] ids = checkersId.replaceAll("[{}]", "").split(",");
+    /**
+     * Подписывает на публикацию нового снимка. Подписчик получает боссов последнего опубликованного
+     * снимка, поэтому при одновременных публикациях последний вызов всегда видит актуальные данные.
+     */
+    public void addSnapshotListener(Consumer<List<Boss>> listener) {
+        snapshotListeners.add(listener);
+    }
 
-        for (String idStr : ids) {
+    private void notifySnapshotListeners() {
+        List<Boss> bosses = snapshot.get().bosses();
+        for (Consumer<List<Boss>> listener : snapshotListeners) {
             try {
-                int id = Integer.parseInt(idStr.trim());
-                String login = null;
-                try {
-                    login = bossDao.findCheckerLoginById(id);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                if (login != null && !login.isEmpty()) {
-                    logins.add(login);
-                }
-            } catch (NumberFormatException e) {
-                log.warn("Некорректный ID проверяющего: {}", idStr);
+                listener.accept(bosses);
+            } catch (RuntimeException e) {
+                log.error("Ошибка подписчика на обновление кеша боссов", e);
             }
         }
-        return logins;
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
     }
 
     private Boss findBossById(int bossId) {
-        return bossesCache.stream()
-                .filter(b -> b.getId() == bossId)
-                .findFirst()
-                .orElse(null);
+        return snapshot.get().findById(bossId);
     }
 
 }
\ No newline at end of file
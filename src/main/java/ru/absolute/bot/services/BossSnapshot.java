@@ -0,0 +1,118 @@
+package ru.absolute.bot.services;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.absolute.bot.models.Boss;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок кеша боссов и предметов вместе с моментами обновления его частей.
+ * Публикуется целиком вместе с индексами, поэтому читатели всегда видят согласованные данные,
+ * а поиск по ID и по имени стоит O(1). Если в листе повторяется ID или имя, оба индекса
+ * возвращают первого такого босса.
+ *
+ * @param positionById     позиция босса в списке по его ID
+ * @param positionByName   позиция босса в списке по нормализованному имени
+ * @param searchIndex      индекс для автозаполнения имени босса
+ * @param itemCatalog      предметы дропа боссов, подготовленные для меню и сообщений
+ * @param fullReloadTime   время последней полной перезагрузки листов
+ * @param killTimesTime    время последнего обновления времени убийства
+ * @param changeCheckTime  время последней проверки отпечатков листов
+ */
+@Slf4j
+public record BossSnapshot(List<Boss> bosses,
+                           IntIndex positionById,
+                           Map<String, Integer> positionByName,
+                           BossSearchIndex searchIndex,
+                           Map<String, String> items,
+                           ItemCatalog itemCatalog,
+                           long fullReloadTime,
+                           long killTimesTime,
+                           long changeCheckTime) {
+
+    public BossSnapshot {
+        bosses = List.copyOf(bosses);
+        positionByName = Map.copyOf(positionByName);
+        items = Map.copyOf(items);
+    }
+
+    /**
+     * Создает снимок, построив индексы по списку боссов.
+     */
+    public static BossSnapshot of(List<Boss> bosses, Map<String, String> items,
+                                  long fullReloadTime, long killTimesTime, long changeCheckTime) {
+        int[] ids = new int[bosses.size()];
+        Map<String, Integer> positionByName = new HashMap<>();
+        Set<Integer> seenIds = new HashSet<>();
+        for (int i = 0; i < bosses.size(); i++) {
+            Boss boss = bosses.get(i);
+            ids[i] = boss.getId();
+            if (!seenIds.add(boss.getId())) {
+                log.warn("ID босса {} повторяется в листе ({}). Используется первая строка.", boss.getId(), boss.getName());
+            }
+            if (positionByName.putIfAbsent(normalizeName(boss.getName()), i) != null) {
+                log.warn("Имя босса \"{}\" повторяется в листе (ID {}). Используется первая строка.",
+                        boss.getName(), boss.getId());
+            }
+        }
+        IntIndex positionById = new IntIndex(ids);
+        return new BossSnapshot(bosses, positionById, positionByName, BossSearchIndex.build(bosses),
+                items, new ItemCatalog(bosses, positionById, items),
+                fullReloadTime, killTimesTime, changeCheckTime);
+    }
+
+    /**
+     * Ключ поиска по имени: без пробелов по краям и без учета регистра.
+     */
+    public static String normalizeName(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public Boss findById(int bossId) {
+        int position = positionById.get(bossId);
+        return position >= 0 ? bosses.get(position) : null;
+    }
+
+    public Boss findByName(String name) {
+        Integer position = positionByName.get(normalizeName(name));
+        return position != null ? bosses.get(position) : null;
+    }
+
+    /**
+     * Снимок с новыми данными о времени убийства; порядок, имена и дроп боссов те же, поэтому индексы переиспользуются.
+     */
+    public BossSnapshot withKillTimes(List<Boss> refreshed, long time) {
+        return new BossSnapshot(refreshed, positionById, positionByName, searchIndex, items, itemCatalog,
+                fullReloadTime, time, changeCheckTime);
+    }
+
+    /**
+     * Снимок после проверки отпечатков, не затронувшей лист боссов. Каталог предметов
+     * перестраивается, только если лист предметов перечитан.
+     */
+    public BossSnapshot withItems(Map<String, String> newItems, long time) {
+        ItemCatalog catalog = newItems == items ? itemCatalog : new ItemCatalog(bosses, positionById, newItems);
+        return new BossSnapshot(bosses, positionById, positionByName, searchIndex, newItems, catalog,
+                fullReloadTime, killTimesTime, time);
+    }
+
+    /**
+     * Возвращает снимок, в котором заменен один босс с тем же ID; индексы переиспользуются.
+     * Если такого босса нет, возвращает null.
+     */
+    public BossSnapshot withBoss(Boss boss) {
+        int position = positionById.get(boss.getId());
+        if (position < 0) {
+            return null;
+        }
+        Boss[] updated = bosses.toArray(new Boss[0]);
+        updated[position] = boss;
+        return new BossSnapshot(List.of(updated), positionById, positionByName, searchIndex, items, itemCatalog,
+                fullReloadTime, killTimesTime, changeCheckTime);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.absolute.bot.services;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.absolute.bot.dao.BossDao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Справочник палилок (ID -> логин) в памяти.
+ * Загружается одним чтением листа и обновляется по TTL в фоне: пока идет обновление,
+ * запросы обслуживаются прежней версией справочника, поэтому оповещения не ждут сети.
+ */
+@Slf4j
+public class CheckerDirectory {
+    private static final long CHECKERS_CACHE_EXPIRATION_TIME = 30 * 60 * 1000; // 30 минут
+
+    private final BossDao bossDao;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private volatile Map<Integer, String> loginsById;
+    private volatile long lastUpdateTime = 0;
+
+    public CheckerDirectory(BossDao bossDao) {
+        this.bossDao = bossDao;
+    }
+
+    /**
+     * Заменяет справочник данными, уже загруженными (например, пакетным запросом).
+     */
+    public void load(Map<Integer, String> checkers) {
+        this.loginsById = Map.copyOf(checkers);
+        this.lastUpdateTime = System.currentTimeMillis();
+        log.info("Справочник палилок обновлен. Загружено {} записей.", checkers.size());
+    }
+
+    /**
+     * Возвращает логины палилок для строки вида "{1,2,3}". Каждый ID ищется в памяти, O(k).
+     */
+    public List<String> resolve(String checkersId) {
+        if (checkersId == null || checkersId.isEmpty() || checkersId.equals("{}")) {
+            return Collections.emptyList();
+        }
+
+        Map<Integer, String> directory = directory();
+        List<String> logins = new ArrayList<>();
+        for (String idStr : checkersId.replaceAll("[{}]", "").split(",")) {
+            try {
+                String login = directory.get(Integer.parseInt(idStr.trim()));
+                if (login != null && !login.isEmpty()) {
+                    logins.add(login);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Некорректный ID проверяющего: {}", idStr);
+            }
+        }
+        return logins;
+    }
+
+    private Map<Integer, String> directory() {
+        Map<Integer, String> current = loginsById;
+        if (current == null) {
+            // Справочник еще не загружался - единственный случай, когда ждем чтения листа
+            try {
+                load(bossDao.getAllCheckers());
+                return loginsById;
+            } catch (IOException e) {
+                log.error("Ошибка при загрузке справочника палилок", e);
+                return Collections.emptyMap();
+            }
+        }
+
+        if (System.currentTimeMillis() - lastUpdateTime > CHECKERS_CACHE_EXPIRATION_TIME
+                && refreshing.compareAndSet(false, true)) {
+            bossDao.getAllCheckersAsync().whenComplete((checkers, error) -> {
+                if (error != null) {
+                    log.error("Ошибка при обновлении справочника палилок", error);
+                } else {
+                    load(checkers);
+                }
+                refreshing.set(false);
+            });
+        }
+        return current;
+    }
+}
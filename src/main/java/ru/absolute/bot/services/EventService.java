@@ -13,65 +13,115 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class EventService {
-    private final EventDao eventDao;
+    // Сверка событий в памяти с листом: подхватывает правки, сделанные в таблице вручную
+    private static final long RECONCILE_INTERVAL = 60 * 1000; // 1 минута
 
-    public EventService(EventDao eventDao) {
+    private final EventDao eventDao;
+    private final OperationJournal journal;
+    private final EventStore store = new EventStore();
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-store-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EventService(EventDao eventDao, OperationJournal journal) {
         this.eventDao = eventDao;
+        this.journal = journal;
+        initializeStore();
+        journal.register(OperationJournal.Type.CREATE_EVENT, this::applyCreate);
+        journal.register(OperationJournal.Type.EDIT_EVENT, this::applyEdit);
+        reconciler.scheduleWithFixedDelay(this::reconcile,
+                RECONCILE_INTERVAL, RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Создает новое событие.
+     * Загружает события в память при старте. Если лист уже прочитан пакетной загрузкой,
+     * обращения к хранилищу не будет.
      */
-    public String createEvent(String bossName, String drop, List<String> members) {
-        // Создаем объект события
-        Event event = new Event(
-                generateId(),
-                LocalDate.now(),
-                bossName,
-                drop != null ? drop : "",
-                members != null ? new ArrayList<>(members) : new ArrayList<>(), // Изменяемый список
-                members != null ? members.size() : 0,
-                EventStatus.IN_PROGRESS
-        );
+    private void initializeStore() {
+        try {
+            long readStart = store.beginRead();
+            store.replaceAll(readStart, eventDao.getAllEvents());
+            log.info("Кеш событий инициализирован. Загружено {} событий.", store.size());
+        } catch (IOException e) {
+            log.error("Ошибка при инициализации кеша событий", e);
+            throw new RuntimeException("Не удалось инициализировать кеш событий", e);
+        }
+    }
 
+    /**
+     * Сверяет события в памяти с листом. EventDao дочитывает только новые строки
+     * и периодически сверяет контрольные суммы, поэтому сверка дешевая.
+     */
+    private void reconcile() {
         try {
-            // Логируем информацию о создаваемом событии
-            log.info("Создание события для босса: {}", bossName);
-            log.info("Дропы: {}", drop);
-            log.info("Участники: {}", members);
+            long readStart = store.beginRead();
+            store.replaceAll(readStart, eventDao.getAllEvents());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось сверить события с таблицей. Используются события из памяти.", e);
+        }
+    }
 
-            // Пытаемся создать событие в Google Sheets
-            eventDao.createEvent(event);
+    /**
+     * Создает новое событие. Событие сначала сохраняется в журнал на диске, запись в таблицу
+     * идет на виртуальном потоке; future завершается ID события после записи в журнал.
+     */
+    public CompletableFuture<String> createEventAsync(String bossName, String drop, List<String> members) {
+        Event event = newEvent(bossName, drop, members);
+
+        log.info("Создание события для босса: {}", bossName);
+        log.info("Дропы: {}", drop);
+        log.info("Участники: {}", members);
+
+        return journal.submit(OperationJournal.Entry.createEvent(event))
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        log.error("Ошибка при создании события для босса: {}", bossName, e);
+                        throw new RuntimeException("Не удалось создать событие", e);
+                    }
+                    log.info("Событие успешно создано с ID: {}", event.getId());
+                    return event.getId();
+                });
+    }
 
-            // Логируем успешное создание события
-            log.info("Событие успешно создано с ID: {}", event.getId());
+    /**
+     * Добавляет событие из журнала. При повторе сначала проверяет, не было ли оно уже добавлено.
+     */
+    private CompletableFuture<Void> applyCreate(OperationJournal.Entry entry, boolean retry) {
+        Event event = entry.toEvent();
+        store.put(event); // Событие видно командам сразу, до записи в таблицу
+        CompletableFuture<Void> written = !retry
+                ? eventDao.createEventAsync(event)
+                : eventDao.findEventByIdAsync(event.getId()).thenCompose(existing -> existing != null
+                        ? CompletableFuture.completedFuture(null)
+                        : eventDao.createEventAsync(event));
+        return written.thenRun(() -> store.confirm(event));
+    }
 
-            // Возвращаем ID созданного события
-            return event.getId();
-        } catch (Exception e) {
-            // Логируем ошибку с деталями
-            log.error("Ошибка при создании события для босса: {}", bossName, e);
-            log.error("Дропы: {}", drop);
-            log.error("Участники: {}", members);
-            log.error("Исключение: {}", e.getMessage(), e);
-
-            // Пробрасываем исключение дальше
-            throw new RuntimeException("Не удалось создать событие", e);
-        }
+    private CompletableFuture<Void> applyEdit(OperationJournal.Entry entry, boolean retry) {
+        Event event = entry.toEvent();
+        store.put(event);
+        return eventDao.updateEventAsync(event).thenRun(() -> store.confirm(event));
     }
 
     /**
-     * Редактирует существующее событие.
+     * Редактирует существующее событие. Новое состояние события сохраняется в журнал
+     * и сразу попадает в память, запись в таблицу идет в фоне и при сбое повторяется.
+     * Результат - как у {@link #updateEvent(Event)}; ненайденное событие считается записанным.
      */
-    public void editEvent(String eventId, EventStatus status, List<String> addedMembers, List<String> removedMembers) {
+    public CompletableFuture<Boolean> editEvent(String eventId, EventStatus status, List<String> addedMembers,
+                                             List<String> removedMembers) {
         try {
-            Event event = eventDao.findEventById(eventId);
+            Event event = findEventById(eventId);
             if (event != null) {
                 if (status != null) {
                     event.setStatus(status);
@@ -82,39 +132,22 @@ public class EventService {
                 if (removedMembers != null) {
                     removedMembers.forEach(event::removeMember);
                 }
-                eventDao.updateEvent(event);
-            } else {
-                log.warn("Событие с ID {} не найдено.", eventId);
+                return updateEvent(event);
             }
+            log.warn("Событие с ID {} не найдено.", eventId);
+            return CompletableFuture.completedFuture(true);
         } catch (Exception e) {
             log.error("Ошибка при редактировании события с ID: {}", eventId, e);
-            throw new RuntimeException("Не удалось редактировать событие", e);
+            return CompletableFuture.failedFuture(new RuntimeException("Не удалось редактировать событие", e));
         }
     }
 
     /**
-     * Получает события по статусу.
+     * Получает события по статусу из памяти, отсортированные по дате.
+     * Список неизменяемый, события в нем менять нельзя.
      */
     public List<Event> getEventsByStatus(EventStatus status) {
-        try {
-            log.info("Получение событий со статусом: {}", status);
-            List<Event> allEvents  = eventDao.getAllEvents();
-
-            // Если события не найдены, возвращаем пустой список
-            if (allEvents  == null) {
-                log.info("События не найдены.");
-                return Collections.emptyList();
-            }
-
-            log.info("Найдено {} событий.", allEvents.size());
-            // Фильтруем события по статусу
-            return allEvents.stream()
-                    .filter(event -> event.getStatus() == status)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            log.error("Ошибка при получении событий по статусу: {}", status, e);
-            throw new RuntimeException("Не удалось получить события по статусу", e);
-        }
+        return store.findByStatus(status);
     }
 
     /**
@@ -129,8 +162,32 @@ public class EventService {
         }
     }
 
+    /**
+     * Находит событие в памяти и возвращает его копию, которую можно менять.
+     * Если события в памяти нет (например, его только что добавили в таблицу вручную), читает лист.
+     */
     public Event findEventById(String id) throws IOException {
-        return eventDao.findEventById(id);
+        Event event = store.findById(id);
+        if (event != null) {
+            return event;
+        }
+        event = eventDao.findEventById(id);
+        if (event != null) {
+            reconcile();
+        }
+        return event;
+    }
+
+    private Event newEvent(String bossName, String drop, List<String> members) {
+        return new Event(
+                generateId(),
+                LocalDate.now(),
+                bossName,
+                drop != null ? drop : "",
+                members != null ? new ArrayList<>(members) : new ArrayList<>(), // Изменяемый список
+                members != null ? members.size() : 0,
+                EventStatus.IN_PROGRESS
+        );
     }
 
     /**
@@ -140,7 +197,18 @@ public class EventService {
         return String.valueOf(System.currentTimeMillis());
     }
 
-    public void updateEvent(Event event) throws IOException {
-        eventDao.updateEvent(event);
+    /**
+     * Сохраняет новое состояние события в журнал, не блокируя вызывающий поток.
+     * Future завершается после первой записи в хранилище: true - записано, false - изменения сохранены,
+     * но запись не удалась и будет повторена. Исключением - если изменения сохранить не удалось.
+     */
+    public CompletableFuture<Boolean> updateEvent(Event event) {
+        OperationJournal.Entry entry = OperationJournal.Entry.editEvent(event);
+        return journal.submit(entry).thenCompose(ignored -> entry.whenApplied()
+                .handle((applied, error) -> error == null));
+    }
+
+    public void shutdown() {
+        reconciler.shutdownNow();
     }
 }
\ No newline at end of file
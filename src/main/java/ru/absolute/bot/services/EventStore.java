@@ -0,0 +1,160 @@
+package ru.absolute.bot.services;
+
+import ru.absolute.bot.models.Event;
+import ru.absolute.bot.models.EventStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * События в памяти с индексами по ID и статусу. Записи попадают сюда сразу (write-through),
+ * а лист периодически сверяется с памятью. Пока запись не подтверждена хранилищем,
+ * она считается ожидающей и не затирается сверкой с листом, где ее еще нет.
+ * Подтвержденная запись остается ожидающей, пока ее не увидит чтение листа, начатое после
+ * подтверждения: более раннее чтение могло вернуть строку до записи.
+ * Индексы публикуются неизменяемым снимком, поэтому чтения не блокируются.
+ */
+final class EventStore {
+    private static final Comparator<Event> BY_DATE = Comparator.comparing(Event::getDate);
+    private static final long NOT_CONFIRMED = Long.MAX_VALUE;
+
+    /**
+     * Неизменяемый снимок событий. events - в порядке строк листа; списки по статусу
+     * отсортированы по дате, при равной дате - в порядке строк.
+     */
+    private record Index(List<Event> events,
+                         Map<String, Event> byId,
+                         Map<EventStatus, List<Event>> byStatus) {
+
+        static Index of(Collection<Event> events) {
+            List<Event> sorted = new ArrayList<>(events);
+            sorted.sort(BY_DATE);
+
+            Map<String, Event> byId = new HashMap<>(sorted.size() * 2);
+            Map<EventStatus, List<Event>> byStatus = new EnumMap<>(EventStatus.class);
+            for (Event event : sorted) {
+                byId.put(event.getId(), event);
+                byStatus.computeIfAbsent(event.getStatus(), ignored -> new ArrayList<>()).add(event);
+            }
+            byStatus.replaceAll((status, list) -> List.copyOf(list));
+            return new Index(List.copyOf(events), byId, byStatus);
+        }
+    }
+
+    /**
+     * Ожидающая запись. confirmedAt - номер подтверждения из общей последовательности
+     * с чтениями листа, NOT_CONFIRMED пока хранилище не подтвердило запись.
+     */
+    private record Pending(Event event, long confirmedAt) {
+    }
+
+    private final AtomicReference<Index> index = new AtomicReference<>(Index.of(List.of()));
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Изменения индекса и ожидающих записей; чтения идут по снимку без блокировки
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private long lastReadStart = 0;
+
+    /**
+     * Номер начала чтения листа. Берется до чтения и передается в replaceAll.
+     */
+    long beginRead() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Заменяет события содержимым листа, прочитанного начиная с readStart, оставляя поверх
+     * ожидающие записи. Снимок, начатый раньше уже примененного, отбрасывается.
+     */
+    void replaceAll(long readStart, List<Event> fromSheet) {
+        writeLock.lock();
+        try {
+            if (readStart < lastReadStart) {
+                return; // Более свежий снимок уже применен
+            }
+            lastReadStart = readStart;
+
+            Map<String, Event> merged = new LinkedHashMap<>();
+            for (Event event : fromSheet) {
+                merged.put(event.getId(), event);
+            }
+            pending.values().removeIf(entry -> entry.confirmedAt() < readStart); // Чтение уже видит запись
+            pending.forEach((id, entry) -> merged.put(id, entry.event()));
+            index.set(Index.of(merged.values()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает событие в память до подтверждения хранилищем.
+     */
+    void put(Event event) {
+        Event stored = copyOf(event);
+        writeLock.lock();
+        try {
+            pending.put(stored.getId(), new Pending(stored, NOT_CONFIRMED));
+            Map<String, Event> events = new LinkedHashMap<>();
+            index.get().events().forEach(existing -> events.put(existing.getId(), existing));
+            events.put(stored.getId(), stored);
+            index.set(Index.of(events.values()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Хранилище подтвердило запись: если после нее событие не менялось, запись перестанет
+     * быть ожидающей при первой сверке, начатой после этого момента.
+     */
+    void confirm(Event event) {
+        pending.computeIfPresent(event.getId(), (id, entry) ->
+                entry.confirmedAt() == NOT_CONFIRMED && sameState(entry.event(), event)
+                        ? new Pending(entry.event(), sequence.incrementAndGet())
+                        : entry);
+    }
+
+    /**
+     * Копия события: вызывающий код может ее менять, не затрагивая индекс.
+     */
+    Event findById(String id) {
+        Event event = index.get().byId().get(id);
+        return event != null ? copyOf(event) : null;
+    }
+
+    /**
+     * События со статусом, отсортированные по дате. Список неизменяемый, события менять нельзя.
+     */
+    List<Event> findByStatus(EventStatus status) {
+        return index.get().byStatus().getOrDefault(status, List.of());
+    }
+
+    int size() {
+        return index.get().byId().size();
+    }
+
+    static Event copyOf(Event event) {
+        List<String> members = event.getMembers() != null ? new ArrayList<>(event.getMembers()) : new ArrayList<>();
+        return new Event(event.getId(), event.getDate(), event.getBossName(), event.getDrop(),
+                members, event.getNumberOfMembers(), event.getStatus());
+    }
+
+    private static boolean sameState(Event a, Event b) {
+        return Objects.equals(a.getDate(), b.getDate())
+                && Objects.equals(a.getBossName(), b.getBossName())
+                && Objects.equals(a.getDrop(), b.getDrop())
+                && Objects.equals(a.getMembers(), b.getMembers())
+                && a.getStatus() == b.getStatus();
+    }
+}
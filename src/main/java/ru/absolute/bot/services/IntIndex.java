@@ -0,0 +1,56 @@
+package ru.absolute.bot.services;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемое отображение int -> позиция (неотрицательный int) на открытой адресации.
+ * Ключи не упаковываются в Integer, поиск - одно-два обращения к массиву.
+ */
+final class IntIndex {
+    private static final int ABSENT = -1;
+
+    private final int[] keys;
+    private final int[] positions;
+    private final int mask;
+
+    /**
+     * Строит индекс: ключу keys[i] соответствует позиция i. При повторе ключа остается первая позиция.
+     */
+    IntIndex(int[] keys) {
+        int capacity = Integer.highestOneBit(Math.max(2, keys.length * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.positions = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(positions, ABSENT);
+
+        for (int i = 0; i < keys.length; i++) {
+            int slot = slot(keys[i]);
+            if (positions[slot] != ABSENT) {
+                continue; // Ключ уже есть: остается первая позиция
+            }
+            this.keys[slot] = keys[i];
+            this.positions[slot] = i;
+        }
+    }
+
+    /**
+     * Позиция для ключа или -1, если ключа нет.
+     */
+    int get(int key) {
+        return positions[slot(key)];
+    }
+
+    // Слот с этим ключом либо первый свободный слот на пути поиска
+    private int slot(int key) {
+        int slot = mix(key) & mask;
+        while (positions[slot] != ABSENT && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,140 @@
+package ru.absolute.bot.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.components.selections.SelectOption;
+import ru.absolute.bot.models.Boss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Каталог предметов для интерфейса дропа. Строится вместе со снимком кеша, когда меняется лист
+ * боссов или предметов. ID предметов заменены порядковыми номерами, для каждого босса заранее
+ * собраны номера дропа, варианты выпадающего меню и автозаполнения, поэтому отрисовка
+ * не разбирает строки и не ходит в карту предметов.
+ */
+@Slf4j
+public final class ItemCatalog {
+    // Discord принимает не больше 25 вариантов в меню и в автозаполнении
+    private static final int MAX_OPTIONS = 25;
+    private static final int MAX_LABEL_LENGTH = 100;
+    private static final int MAX_MEMO_SIZE = 10_000;
+
+    private final Map<String, Integer> numberById;
+    private final String[] ids;
+    private final String[] names;
+    private final IntIndex positionById;
+    private final List<List<SelectOption>> optionsByPosition;
+    private final List<List<Command.Choice>> choicesByPosition;
+    private final Map<String, List<String>> dropNamesMemo = new ConcurrentHashMap<>();
+
+    ItemCatalog(List<Boss> bosses, IntIndex positionById, Map<String, String> items) {
+        this.numberById = new HashMap<>(items.size() * 2);
+        this.ids = new String[items.size()];
+        this.names = new String[items.size()];
+        for (Map.Entry<String, String> item : items.entrySet()) {
+            String id = item.getKey().trim();
+            String name = item.getValue().trim();
+            // Пустое название не может быть вариантом меню
+            if (!name.isEmpty() && numberById.putIfAbsent(id, numberById.size()) == null) {
+                ids[numberById.size() - 1] = id;
+                names[numberById.size() - 1] = name;
+            }
+        }
+
+        this.positionById = positionById;
+        this.optionsByPosition = new ArrayList<>(bosses.size());
+        this.choicesByPosition = new ArrayList<>(bosses.size());
+        for (int i = 0; i < bosses.size(); i++) {
+            Boss boss = bosses.get(i);
+            int[] drop = resolveDrop(boss);
+
+            SelectOption[] options = new SelectOption[Math.min(drop.length, MAX_OPTIONS)];
+            Command.Choice[] choices = new Command.Choice[options.length];
+            for (int j = 0; j < options.length; j++) {
+                String id = ids[drop[j]];
+                String label = truncate(names[drop[j]]);
+                options[j] = SelectOption.of(label, id);
+                choices[j] = new Command.Choice(label, id);
+            }
+            if (drop.length > MAX_OPTIONS) {
+                log.warn("У босса {} {} предметов дропа, в меню попадут только первые {}",
+                        boss.getName(), drop.length, MAX_OPTIONS);
+            }
+            optionsByPosition.add(List.of(options));
+            choicesByPosition.add(List.of(choices));
+        }
+    }
+
+    /**
+     * Варианты выпадающего меню дропа босса: без повторов, только предметы с известным названием.
+     */
+    public List<SelectOption> getDropOptions(Boss boss) {
+        int position = positionById.get(boss.getId());
+        return position >= 0 ? optionsByPosition.get(position) : Collections.emptyList();
+    }
+
+    /**
+     * Варианты автозаполнения дропа босса.
+     */
+    public List<Command.Choice> getDropChoices(Boss boss) {
+        int position = positionById.get(boss.getId());
+        return position >= 0 ? choicesByPosition.get(position) : Collections.emptyList();
+    }
+
+    /**
+     * Названия предметов для строки ID дропа события вида "393,394,415". Неизвестные ID пропускаются.
+     * Строки дропа повторяются от отрисовки к отрисовке, поэтому результат запоминается.
+     */
+    public List<String> getDropNames(String dropIds) {
+        List<String> cached = dropNamesMemo.get(dropIds);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> dropNames = new ArrayList<>();
+        for (String id : dropIds.split(",")) {
+            Integer number = numberById.get(id.trim());
+            if (number != null) {
+                dropNames.add(names[number]);
+            } else if (!id.isBlank()) {
+                log.warn("Не найдено название для дропа с ID: {}", id);
+            }
+        }
+        List<String> result = List.copyOf(dropNames);
+        if (dropNamesMemo.size() >= MAX_MEMO_SIZE) {
+            dropNamesMemo.clear();
+        }
+        dropNamesMemo.put(dropIds, result);
+        return result;
+    }
+
+    /**
+     * Номера предметов дропа босса без повторов, в порядке таблицы.
+     */
+    private int[] resolveDrop(Boss boss) {
+        if (boss.getItemList() == null) {
+            return new int[0];
+        }
+        Set<Integer> drop = new LinkedHashSet<>();
+        for (String id : boss.getItemList()) {
+            Integer number = numberById.get(id.trim());
+            if (number != null) {
+                drop.add(number);
+            } else if (!id.isBlank()) {
+                log.warn("Не найдено название для дропа с ID {} у босса {}", id, boss.getName());
+            }
+        }
+        return drop.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_LABEL_LENGTH ? text : text.substring(0, MAX_LABEL_LENGTH - 1) + "…";
+    }
+}
@@ -0,0 +1,451 @@
+package ru.absolute.bot.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+import ru.absolute.bot.models.Event;
+import ru.absolute.bot.models.EventStatus;
+import ru.absolute.bot.utils.ConfigLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Журнал упреждающей записи для убийств боссов, создания и редактирования событий.
+ * Операция сначала записывается в файл (fsync одной пачкой для всех операций, пришедших одновременно),
+ * и только потом применяется. Операции, не подтвержденные хранилищем, повторяются
+ * при старте бота и периодически во время работы. Подтвержденные операции вычищаются из файла.
+ * Операции над одним боссом или событием применяются строго по порядку: следующая ждет,
+ * пока применяется предыдущая, а несостоявшаяся предыдущая правка вытесняется более новой,
+ * чтобы ее повтор не затер более новое состояние.
+ * Если хранилище само надежно сохраняет записи на диск и повторяет их отправку (локальная база
+ * с отражением в Google Sheets), журнал не пишет операции в файл и не повторяет их: у каждой операции
+ * один надежный журнал и один цикл повтора. Тогда операция считается сохраненной, когда ее принял
+ * обработчик, а оставшиеся в файле операции прошлых запусков повторяются как обычно.
+ */
+@Slf4j
+public class OperationJournal {
+    private static final Gson GSON = new Gson();
+    private static final long RETRY_INTERVAL = 60 * 1000; // 1 минута
+    private static final int COMPACT_AFTER_LINES = 1000;
+
+    public enum Type {
+        KILL, CREATE_EVENT, EDIT_EVENT
+    }
+
+    /**
+     * Применяет операцию. retry = true при повторе после сбоя или перезапуска:
+     * обработчик должен учитывать, что операция могла быть применена частично.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        CompletableFuture<Void> apply(Entry entry, boolean retry);
+    }
+
+    /**
+     * Запись журнала. Хранит итоговое состояние, а не изменение, поэтому повтор безопасен.
+     * Строки подтверждения содержат только ack.
+     */
+    public static class Entry {
+        private long id;
+        private Type type;
+        private long createdAt;
+        private Long ack;
+
+        private Integer bossId;
+        private String bossName;
+        private String killTime;
+
+        private String eventId;
+        private String date;
+        private String drop;
+        private List<String> members;
+        private String status;
+
+        // Результат первого применения; в файл не пишется
+        private transient CompletableFuture<Void> applied = new CompletableFuture<>();
+        // Операция сохранена в файле журнала и повторяется им; иначе ее сохраняет и повторяет хранилище
+        private transient boolean journaled;
+
+        public static Entry kill(int bossId, String bossName, LocalDateTime killTime) {
+            Entry entry = new Entry();
+            entry.type = Type.KILL;
+            entry.bossId = bossId;
+            entry.bossName = bossName;
+            entry.killTime = killTime.toString();
+            return entry;
+        }
+
+        public static Entry createEvent(Event event) {
+            return ofEvent(Type.CREATE_EVENT, event);
+        }
+
+        public static Entry editEvent(Event event) {
+            return ofEvent(Type.EDIT_EVENT, event);
+        }
+
+        private static Entry ofEvent(Type type, Event event) {
+            Entry entry = new Entry();
+            entry.type = type;
+            entry.eventId = event.getId();
+            entry.date = event.getDate().toString();
+            entry.bossName = event.getBossName();
+            entry.drop = event.getDrop();
+            entry.members = new ArrayList<>(event.getMembers());
+            entry.status = event.getStatus().name();
+            return entry;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getBossId() {
+            return bossId;
+        }
+
+        public String getBossName() {
+            return bossName;
+        }
+
+        public LocalDateTime getKillTime() {
+            return LocalDateTime.parse(killTime);
+        }
+
+        public String getEventId() {
+            return eventId;
+        }
+
+        /**
+         * Future первого применения операции: завершается исключением, если запись в хранилище
+         * не удалась (операция остается в журнале и будет повторена).
+         */
+        public CompletableFuture<Void> whenApplied() {
+            return applied;
+        }
+
+        /**
+         * Ключ объекта, который меняет операция: операции с одним ключом применяются по порядку.
+         */
+        private String key() {
+            return type == Type.KILL ? "boss:" + bossId : "event:" + eventId;
+        }
+
+        public Event toEvent() {
+            return new Event(eventId, LocalDate.parse(date), bossName, drop, members, members.size(),
+                    EventStatus.valueOf(status));
+        }
+
+        @Override
+        public String toString() {
+            return type + " #" + id + (bossName != null ? " " + bossName : "") + (eventId != null ? " " + eventId : "");
+        }
+    }
+
+    private record PendingWrite(Entry entry, CompletableFuture<Entry> durable) {
+    }
+
+    private final Path journalFile;
+    private final Map<Type, Handler> handlers = new EnumMap<>(Type.class);
+    private final ConcurrentNavigableMap<Long, Entry> unacked = new ConcurrentSkipListMap<>();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    // Проверка порядка и запуск операции должны быть атомарны
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread writer;
+
+    private FileChannel channel;
+    private int lines = 0;
+    private volatile boolean running = true;
+    private final boolean writeAhead;
+
+    /**
+     * @param durableStore хранилище само надежно сохраняет записи и повторяет их отправку
+     */
+    public OperationJournal(Path dataDir, boolean durableStore) throws IOException {
+        this.writeAhead = !durableStore;
+        Files.createDirectories(dataDir);
+        this.journalFile = dataDir.resolve("operations.journal");
+        load();
+        compact(); // Заодно отрезает недописанный хвост файла
+
+        this.writer = new Thread(this::writeLoop, "operation-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static OperationJournal fromConfig(boolean durableStore) throws IOException {
+        return new OperationJournal(Path.of(ConfigLoader.getProperty("DATA_DIR", "/data")), durableStore);
+    }
+
+    public void register(Type type, Handler handler) {
+        handlers.put(type, handler);
+    }
+
+    /**
+     * Записывает операцию в журнал и, когда она сохранена на диск, запускает ее применение.
+     * Future завершается сразу после записи на диск и запуска обработчика; ошибка применения
+     * не передается вызывающему - операция останется в журнале и будет повторена.
+     * Если хранилище надежное, операция в файл не пишется, а future завершается, когда ее принял
+     * обработчик (и с его ошибкой, если не принял: повторять операцию некому).
+     */
+    public CompletableFuture<Void> submit(Entry entry) {
+        entry.id = nextId.getAndIncrement();
+        entry.createdAt = System.currentTimeMillis();
+        if (!writeAhead) {
+            unacked.put(entry.id, entry); // Только для порядка применения по объекту
+            apply(entry, false);
+            return entry.applied;
+        }
+        CompletableFuture<Entry> durable = new CompletableFuture<>();
+        queue.add(new PendingWrite(entry, durable));
+        durable.whenComplete((ignored, error) -> {
+            if (error != null) {
+                entry.applied.completeExceptionally(error);
+            }
+        });
+        return durable.thenAccept(written -> apply(written, false));
+    }
+
+    /**
+     * Повторяет все неподтвержденные операции. Вызывается при старте, когда все обработчики зарегистрированы.
+     */
+    public void replay() {
+        if (unacked.isEmpty()) {
+            return;
+        }
+        log.info("Повтор {} неподтвержденных операций из журнала...", unacked.size());
+        unacked.values().forEach(entry -> apply(entry, true));
+    }
+
+    public int getUnackedCount() {
+        return unacked.size();
+    }
+
+    private void apply(Entry entry, boolean retry) {
+        Handler handler = handlers.get(entry.type);
+        if (handler == null) {
+            log.warn("Нет обработчика для операции {}", entry);
+            return;
+        }
+        applyLock.lock();
+        try {
+            if (!unacked.containsKey(entry.id) || inFlight.contains(entry.id)) {
+                return; // Операция уже подтверждена, вытеснена или применяется
+            }
+            for (Entry older : unacked.headMap(entry.id).values()) {
+                if (!older.key().equals(entry.key())) {
+                    continue;
+                }
+                if (inFlight.contains(older.id) || older.type == Type.CREATE_EVENT) {
+                    return; // Будет применена после предыдущей операции с тем же объектом
+                }
+                // Операция хранит итоговое состояние, поэтому более новая полностью заменяет старую
+                log.info("Операция {} вытеснена более новой {}", older, entry);
+                ack(older);
+                older.applied.complete(null);
+            }
+            inFlight.add(entry.id);
+        } finally {
+            applyLock.unlock();
+        }
+
+        CompletableFuture<Void> result;
+        try {
+            result = handler.apply(entry, retry);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((ignored, error) -> {
+            inFlight.remove(entry.id);
+            if (error != null) {
+                if (entry.journaled) {
+                    log.warn("Операция {} не применена и будет повторена: {}", entry, error.getMessage());
+                } else {
+                    log.error("Операция {} не принята хранилищем: {}", entry, error.getMessage());
+                    unacked.remove(entry.id);
+                }
+                entry.applied.completeExceptionally(error);
+            } else {
+                ack(entry);
+                entry.applied.complete(null);
+            }
+            applyNext(entry);
+        });
+    }
+
+    /**
+     * Запускает следующую операцию с тем же объектом, ожидавшую завершения этой.
+     */
+    private void applyNext(Entry completed) {
+        for (Entry next : unacked.tailMap(completed.id, false).values()) {
+            if (next.key().equals(completed.key())) {
+                apply(next, false);
+                return;
+            }
+        }
+    }
+
+    private void ack(Entry entry) {
+        if (unacked.remove(entry.id) != null && entry.journaled) {
+            Entry ack = new Entry();
+            ack.ack = entry.id;
+            queue.add(new PendingWrite(ack, null));
+        }
+    }
+
+    /**
+     * Поток записи: забирает из очереди все операции, пришедшие одновременно,
+     * и сохраняет их одним fsync.
+     */
+    private void writeLoop() {
+        long lastRetryTime = System.currentTimeMillis();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    List<PendingWrite> batch = new ArrayList<>();
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    writeBatch(batch);
+                }
+
+                long now = System.currentTimeMillis();
+                if (running && now - lastRetryTime > RETRY_INTERVAL) {
+                    lastRetryTime = now;
+                    unacked.values().stream()
+                            .filter(entry -> entry.journaled && now - entry.createdAt > RETRY_INTERVAL)
+                            .forEach(entry -> apply(entry, true));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        try {
+            StringBuilder lineBuffer = new StringBuilder();
+            for (PendingWrite write : batch) {
+                lineBuffer.append(GSON.toJson(write.entry())).append('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lineBuffer.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            lines += batch.size();
+
+            for (PendingWrite write : batch) {
+                if (write.durable() != null) {
+                    write.entry().journaled = true;
+                    unacked.put(write.entry().id, write.entry());
+                    write.durable().complete(write.entry());
+                }
+            }
+            if (lines >= COMPACT_AFTER_LINES) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка записи журнала операций", e);
+            for (PendingWrite write : batch) {
+                if (write.durable() != null) {
+                    write.durable().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        long maxId = 0;
+        for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+            Entry entry;
+            try {
+                entry = GSON.fromJson(line, Entry.class);
+            } catch (JsonParseException e) {
+                log.warn("Журнал операций оборван: строка пропущена");
+                break;
+            }
+            if (entry == null) {
+                continue;
+            }
+            if (entry.ack != null) {
+                unacked.remove(entry.ack);
+            } else {
+                entry.journaled = true;
+                unacked.put(entry.id, entry);
+                maxId = Math.max(maxId, entry.id);
+            }
+        }
+        nextId.set(maxId + 1);
+        log.info("Журнал операций загружен: неподтвержденных операций {}", unacked.size());
+    }
+
+    /**
+     * Переписывает журнал, оставляя только неподтвержденные операции.
+     */
+    private void compact() throws IOException {
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        StringBuilder content = new StringBuilder();
+        for (Entry entry : unacked.values()) {
+            content.append(GSON.toJson(entry)).append('\n');
+        }
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            tempChannel.write(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)));
+            tempChannel.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lines = unacked.size();
+    }
+
+    /**
+     * Дописывает оставшиеся подтверждения и закрывает журнал.
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(5_000);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Ошибка при закрытии журнала операций", e);
+        }
+        if (!unacked.isEmpty()) {
+            log.warn("В журнале осталось {} неподтвержденных операций. Они будут повторены после перезапуска.",
+                    unacked.size());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.absolute.bot.services;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.absolute.bot.models.Boss;
+import ru.absolute.bot.utils.TimeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Оповещения о начале респа. На каждого босса взводится один таймер на момент начала окна респа;
+ * таймеры перевзводятся только при публикации нового снимка кеша (убийство, обновление),
+ * и только у боссов, у которых изменилось время респа.
+ */
+@Slf4j
+public class RespawnScheduler {
+    // Если бот был недоступен в момент начала респа, оповещение еще имеет смысл в течение 5 минут
+    private static final long MISSED_ALERT_GRACE = 5 * 60 * 1000; // 5 минут
+
+    private record Armed(LocalDateTime respawnStart, ScheduledFuture<?> timer) {
+    }
+
+    private final Consumer<Boss> alert;
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "respawn-timers");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Armed> armed = new HashMap<>();
+    // Начало респа, о котором уже оповестили, чтобы повторная публикация снимка не повторила оповещение
+    private final Map<Integer, LocalDateTime> alerted = new HashMap<>();
+
+    public RespawnScheduler(BossService bossService, Consumer<Boss> alert) {
+        this.alert = alert;
+        bossService.addSnapshotListener(this::rearm);
+        rearm(bossService.getAllBosses());
+    }
+
+    /**
+     * Сверяет таймеры с боссами из снимка: взводит новые, перевзводит изменившиеся,
+     * снимает таймеры удаленных боссов.
+     */
+    public void rearm(List<Boss> bosses) {
+        lock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Set<Integer> present = new HashSet<>(bosses.size() * 2);
+            int rearmed = 0;
+            for (Boss boss : bosses) {
+                present.add(boss.getId());
+                LocalDateTime respawnStart = TimeUtils.calculateRespawnWindowStart(boss);
+                Armed current = armed.get(boss.getId());
+                if (current != null && Objects.equals(current.respawnStart(), respawnStart)) {
+                    continue;
+                }
+                if (current != null) {
+                    current.timer().cancel(false);
+                    armed.remove(boss.getId());
+                }
+                if (respawnStart == null || respawnStart.equals(alerted.get(boss.getId()))) {
+                    continue;
+                }
+
+                long delay = Duration.between(now, respawnStart).toMillis();
+                if (delay < -MISSED_ALERT_GRACE) {
+                    continue;
+                }
+                ScheduledFuture<?> timer = timers.schedule(() -> fire(boss, respawnStart),
+                        Math.max(0, delay), TimeUnit.MILLISECONDS);
+                armed.put(boss.getId(), new Armed(respawnStart, timer));
+                rearmed++;
+            }
+
+            Iterator<Map.Entry<Integer, Armed>> iterator = armed.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, Armed> entry = iterator.next();
+                if (!present.contains(entry.getKey())) {
+                    entry.getValue().timer().cancel(false);
+                    iterator.remove();
+                }
+            }
+            alerted.keySet().retainAll(present);
+            if (rearmed > 0) {
+                log.debug("Перевзведено таймеров респа: {}, всего активных: {}", rearmed, armed.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fire(Boss boss, LocalDateTime respawnStart) {
+        lock.lock();
+        try {
+            Armed current = armed.get(boss.getId());
+            if (current == null || !current.respawnStart().equals(respawnStart)) {
+                return; // Таймер успели перевзвести
+            }
+            armed.remove(boss.getId());
+            alerted.put(boss.getId(), respawnStart);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            alert.accept(boss);
+        } catch (RuntimeException e) {
+            log.error("Ошибка при отправке оповещения о респе босса {}", boss.getName(), e);
+        }
+    }
+
+    public void shutdown() {
+        timers.shutdownNow();
+    }
+}
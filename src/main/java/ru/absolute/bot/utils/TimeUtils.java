@@ -131,6 +131,39 @@ public class TimeUtils {
         return formatTimeUntilRespawn(now, respawnStart);
     }
 
+    /**
+     * Момент, после которого строка босса в таблице респа станет другой: уменьшится число минут
+     * или часов в {@link #formatBossRespawnStatus}, либо босс перейдет в другую группу таблицы.
+     * @return момент изменения или null, если босс больше не показывается в таблице
+     */
+    public static LocalDateTime nextVisibleChange(Boss boss, LocalDateTime now) {
+        LocalDateTime respawnStart = calculateRespawnWindowStart(boss);
+        if (respawnStart == null) {
+            return null;
+        }
+        LocalDateTime respawnEnd = calculateRespawnWindowEnd(boss);
+
+        if (!now.isAfter(respawnStart)) {
+            return nextCountdownChange(now, respawnStart);
+        }
+        if (now.isBefore(respawnEnd)) {
+            return nextCountdownChange(now, respawnEnd);
+        }
+        // Закончившийся респ показывается еще час, счетчик минут растет каждую минуту
+        long minutesSinceRespawnEnd = ChronoUnit.MINUTES.between(respawnEnd, now);
+        return minutesSinceRespawnEnd < 60 ? respawnEnd.plusMinutes(minutesSinceRespawnEnd + 1) : null;
+    }
+
+    /**
+     * Обратный отсчет до target показывается в минутах, а от часа - в целых часах;
+     * показанное значение уменьшается сразу после возвращаемого момента.
+     */
+    private static LocalDateTime nextCountdownChange(LocalDateTime now, LocalDateTime target) {
+        long minutes = ChronoUnit.MINUTES.between(now, target);
+        long shownMinutes = minutes < 60 ? minutes : minutes / 60 * 60;
+        return target.minusMinutes(shownMinutes);
+    }
+
     private static String formatInRespawnTime(LocalDateTime now, LocalDateTime respawnEnd) {
         long minutes = ChronoUnit.MINUTES.between(now, respawnEnd);
         if (minutes < 1) return "сейчас закончится  ";